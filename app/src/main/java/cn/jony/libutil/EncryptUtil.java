@@ -2,14 +2,15 @@ package cn.jony.libutil;
 
 import android.text.TextUtils;
 import android.util.Base64;
+import cn.jony.libutil.io.Charsets;
+import cn.jony.libutil.io.FileHasher;
+import cn.jony.libutil.io.MultiDigest;
 
 import javax.crypto.Cipher;
 import javax.crypto.KeyGenerator;
 import javax.crypto.spec.SecretKeySpec;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.Iterator;
 import java.util.Map;
@@ -20,29 +21,7 @@ import static cn.jony.libutil.Constants.UTF_8;
 @SuppressWarnings("unused")
 public class EncryptUtil {
     public static String md5(String string) {
-        byte[] hash;
-        try {
-            hash = MessageDigest.getInstance("MD5").digest(string.getBytes("UTF-8"));
-        } catch (NoSuchAlgorithmException var7) {
-            throw new RuntimeException("Huh, MD5 should be supported?", var7);
-        } catch (UnsupportedEncodingException var8) {
-            throw new RuntimeException("Huh, UTF-8 should be supported?", var8);
-        }
-
-        StringBuilder hex = new StringBuilder(hash.length * 2);
-        byte[] var6 = hash;
-        int var5 = hash.length;
-
-        for (int var4 = 0; var4 < var5; ++var4) {
-            byte b = var6[var4];
-            if ((b & 255) < 16) {
-                hex.append("0");
-            }
-
-            hex.append(Integer.toHexString(b & 255));
-        }
-
-        return hex.toString();
+        return FileHasher.hash(string.getBytes(Charsets.forName(UTF_8)), MultiDigest.MD5).hex(MultiDigest.MD5);
     }
 
     public static String getBase64(String str) {
@@ -3,22 +3,28 @@ package cn.jony.libutil;
 import android.os.Environment;
 import android.support.annotation.IntDef;
 import android.text.TextUtils;
+import cn.jony.libutil.io.AppendOnlyDigest;
+import cn.jony.libutil.io.DirectorySizeIndex;
+import cn.jony.libutil.io.DirectoryWalker;
+import cn.jony.libutil.io.FileHasher;
 import cn.jony.libutil.io.IOUtils;
+import cn.jony.libutil.io.MerkleTree;
+import cn.jony.libutil.io.MultiDigest;
 
 import java.io.*;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
-import java.security.MessageDigest;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.text.DecimalFormat;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @SuppressWarnings("unused")
 public class FileUtil {
     private static final String TAG = FileUtil.class.getSimpleName();
     private static final String SD_PATH = "/sdcard";
     public final static String FILE_TYPE_UNKNOWN = "unknow";
-    private static final char HEX_DIGITS[] = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D',
-            'E', 'F'};
     private final static int SIZE_UNIT = 1024;
 
     public final static int B = 0;
@@ -42,32 +48,44 @@ public class FileUtil {
     }
 
     /**
-     * 递归删除file对应的文件(夹)及其所有子文件
+     * 递归删除file对应的文件(夹)及其所有子文件，不跟随符号链接，file为链接时只删除链接本身
      *
      * @param file
      * @return 删除文件数
      */
     public static int deleteAllFiles(File file) {
-        if (file == null || !file.exists())
+        if (file == null)
             return 0;
 
-        if (file.isDirectory()) {
-            int result = 0;
-            File[] subs = file.listFiles();
-            if (subs == null) {
-                return 0;
-            }
+        final AtomicInteger result = new AtomicInteger();
+        try {
+            new DirectoryWalker().walk(file, new DirectoryWalker.Visitor() {
+                @Override
+                public boolean preVisitDirectory(File dir, int depth) {
+                    return true;
+                }
 
-            for (File sub : subs) {
-                result += deleteAllFiles(sub);
-            }
+                @Override
+                public void visitFile(File f, long size, int depth) {
+                    if (f.delete()) {
+                        result.incrementAndGet();
+                        LogUtils.i(TAG, f.getName() + " deleted");
+                    } else {
+                        LogUtils.w(TAG, f.getName() + " not deleted");
+                    }
+                }
 
-            result += file.delete() ? 1 : 0;
-            return result;
-        } else {
-            LogUtils.i(TAG, file.getName() + " deleted");
-            return file.delete() ? 1 : 0;
+                @Override
+                public void postVisitDirectory(File dir, int depth) {
+                    if (dir.delete()) {
+                        result.incrementAndGet();
+                    }
+                }
+            });
+        } catch (IOException e) {
+            LogUtils.e(TAG, e);
         }
+        return result.get();
     }
 
     /**
@@ -86,10 +104,24 @@ public class FileUtil {
 
         deleteFile(target);
 
+        FileInputStream in = null;
+        FileOutputStream out = null;
         try {
-            return copyFile(new FileInputStream(s), new FileOutputStream(t));
+            in = new FileInputStream(s);
+            out = new FileOutputStream(t);
+            // 通过通道复制，transferTo失败时使用DirectBufferPool中的直接缓冲区
+            ReadableByteChannel source = in.getChannel();
+            WritableByteChannel sink = out.getChannel();
+            IOUtils.copyLarge(source, sink);
+            return true;
         } catch (FileNotFoundException e) {
             return false;
+        } catch (IOException e) {
+            LogUtils.e(TAG, e);
+            return false;
+        } finally {
+            IOUtils.closeQuietly(in);
+            IOUtils.closeQuietly(out);
         }
     }
 
@@ -117,7 +149,7 @@ public class FileUtil {
      */
     public static boolean copyFile(InputStream src, OutputStream target) {
         try {
-            IOUtils.copy(src, target);
+            IOUtils.copyLarge(src, target);
         } catch (IOException e) {
             LogUtils.e(TAG, e);
             return false;
@@ -129,6 +161,37 @@ public class FileUtil {
         return true;
     }
 
+    /**
+     * 复制文件，并在同一次读取中计算摘要，用于校验复制结果
+     *
+     * @param src        原文件路径
+     * @param target     目标文件路径
+     * @param algorithms 摘要算法，见 {@link MultiDigest}
+     * @return 复制的字节数和摘要，失败时返回null
+     */
+    public static MultiDigest.Result copyFileWithDigest(String src, String target, String... algorithms) {
+        File s = new File(src);
+        createFile(target);
+        if (!s.exists())
+            return null;
+
+        deleteFile(target);
+
+        InputStream in = null;
+        OutputStream out = null;
+        try {
+            in = new FileInputStream(s);
+            out = new FileOutputStream(target);
+            return IOUtils.copyAndDigest(in, out, algorithms);
+        } catch (IOException e) {
+            LogUtils.e(TAG, e);
+            return null;
+        } finally {
+            IOUtils.closeQuietly(in);
+            IOUtils.closeQuietly(out);
+        }
+    }
+
     /**
      * 检测sd卡是否加载成功
      *
@@ -213,24 +276,31 @@ public class FileUtil {
      * 计算文件内容数量 *
      */
     public static int calcFileCount(File file, final List<String> types) {
-        if (file.isDirectory()) {
-            File[] files = file.listFiles(new FileFilter() {
-                @Override
-                public boolean accept(File filterFile) {
-                    try {
-                        if (filterFile.isHidden() || !filterFile.canRead() || isSymlinkOrEmpty(filterFile))
+        if (!file.isDirectory())
+            return -1;
+
+        DirectoryWalker walker = new DirectoryWalker()
+                .setExecutor(null)
+                .setMaxDepth(0)
+                .setSymlinkPolicy(DirectoryWalker.SymlinkPolicy.SKIP)
+                .setFilter(new FileFilter() {
+                    @Override
+                    public boolean accept(File filterFile) {
+                        if (filterFile.isHidden() || !filterFile.canRead())
                             return false;
-                    } catch (Exception e) {
-                        e.printStackTrace();
+                        return filterFile.isDirectory()
+                                || (types.contains(getExtensionName(filterFile.getName().toLowerCase())) && filterFile
+                                .length() > 0);
                     }
-                    return filterFile.isDirectory()
-                            || (types.contains(getExtensionName(filterFile.getName().toLowerCase())) && filterFile
-                            .length() > 0);
-                }
-            });
-            return files == null ? 0 : files.length;
+                });
+        try {
+            DirectoryWalker.Result result = walker.walk(file, null);
+            // 不计入file自身
+            return (int) (result.getFileCount() + result.getDirectoryCount() - 1);
+        } catch (IOException e) {
+            LogUtils.e(TAG, e);
+            return 0;
         }
-        return -1;
     }
 
     /**
@@ -293,36 +363,36 @@ public class FileUtil {
         return type;
     }
 
-    private static String toHexString(byte[] b) {
-        StringBuilder sb = new StringBuilder(b.length * 2);
-        for (byte aB : b) {
-            sb.append(HEX_DIGITS[(aB & 0xf0) >>> 4]);
-            sb.append(HEX_DIGITS[aB & 0x0f]);
+    /**
+     * 计算文件的md5
+     *
+     * @param filename
+     * @return 大写的md5，读取失败时返回null
+     * @see AppendOnlyDigest 只追加写入的日志文件，只计算新增部分
+     */
+    public static String md5sum(String filename) {
+        try {
+            return MultiDigest.toHex(FileHasher.hash(new File(filename), MultiDigest.MD5).bytes(MultiDigest.MD5), true);
+        } catch (IOException e) {
+            LogUtils.e(TAG, e);
+            return null;
         }
-        return sb.toString();
     }
 
     /**
-     * 计算文件的md5
+     * 分块并行计算大文件的树形哈希，分块哈希缓存在同目录的.mkl文件中，文件未修改时直接返回。
+     * 在DirectoryWalker的线程池或遍历回调中调用时，在当前线程计算
      *
      * @param filename
-     * @return
+     * @param algorithm 摘要算法，见 {@link MultiDigest}
+     * @return 小写的根哈希，读取失败时返回null
+     * @see MerkleTree
      */
-    public static String md5sum(String filename) {
-        InputStream fis;
-        byte[] buffer = new byte[1024];
-        int numRead;
-        MessageDigest md5;
+    public static String treeHash(String filename, String algorithm) {
         try {
-            fis = new FileInputStream(filename);
-            md5 = MessageDigest.getInstance("MD5");
-            while ((numRead = fis.read(buffer)) > 0) {
-                md5.update(buffer, 0, numRead);
-            }
-            fis.close();
-            return toHexString(md5.digest());
-        } catch (Exception e) {
-            System.out.println("error");
+            return MerkleTree.open(new File(filename), algorithm).getRootHex();
+        } catch (IOException e) {
+            LogUtils.e(TAG, e);
             return null;
         }
     }
@@ -343,23 +413,39 @@ public class FileUtil {
      * @see #getSize(File)
      */
     public static float getSize(File file, @SizeUnit int unit) {
-        if (file.exists()) {
-            // 如果是目录则递归计算其内容的总大小，如果是文件则直接返回其大小
-            if (!file.isFile()) {
-                // 获取文件大小
-                File[] fl = file.listFiles();
-                float ss = 0;
-                for (File f : fl)
-                    ss += getSize(f, unit);
-                return ss;
-            } else {
-                return convertSize((float) file.length(), unit);
-            }
-        } else {
+        return convertSize((float) getSizeInBytes(file), unit);
+    }
+
+    /**
+     * 并行计算文件(夹)的精确字节数，不跟随符号链接
+     *
+     * @param file 文件或文件夹
+     * @return 字节数，文件不存在时为0
+     */
+    public static long getSizeInBytes(File file) {
+        if (file == null)
+            return 0;
+
+        try {
+            return new DirectoryWalker().walk(file, null).getTotalBytes();
+        } catch (IOException e) {
+            LogUtils.e(TAG, e);
             return 0;
         }
     }
 
+    /**
+     * 通过索引获取文件夹大小，只重新列出修改时间变化过的文件夹，适合频繁的配额检查
+     *
+     * @param index 文件夹大小索引
+     * @param unit  大小单位
+     * @return 文件夹大小
+     * @see DirectorySizeIndex
+     */
+    public static float getSize(DirectorySizeIndex index, @SizeUnit int unit) {
+        return convertSize((float) index.size(), unit);
+    }
+
     /**
      * 以B为基准，转换文件大小
      *
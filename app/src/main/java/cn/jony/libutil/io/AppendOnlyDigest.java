@@ -0,0 +1,334 @@
+package cn.jony.libutil.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
+
+import static cn.jony.libutil.Constants.UTF_8;
+
+/**
+ * Keeps the digest of a file that only grows, such as a log or a journal,
+ * hashing only the bytes appended since the last call.
+ * <p/>
+ * The running digest state and the offset it covers are kept between calls.
+ * Before resuming, the first and last {@link #GUARD_SIZE} bytes covered so
+ * far are checked against checksums taken when they were hashed; a file
+ * shorter than the offset or with a changed guard was truncated or rewritten
+ * and is hashed again from the start. A rewrite that leaves both guards and
+ * the size intact is not detected. While size and modification time are
+ * unchanged the stored digest is returned without reading the file.
+ * <p/>
+ * The saved state holds the offset, the guards, the digest at that offset and
+ * the running state, so a loaded tracker answers instantly while the file is
+ * unchanged and hashes only the appended bytes when it has grown. The running
+ * state is exported for MD5, SHA-1, SHA-256 and CRC-32; for any other
+ * {@link MessageDigest} algorithm it lives in the process only, and a loaded
+ * tracker hashes the whole file once when it has grown.
+ * <pre>
+ * AppendOnlyDigest digest = AppendOnlyDigest.load(journal, MultiDigest.MD5, stateFile);
+ * String md5 = digest.hex();
+ * digest.save(stateFile);
+ * </pre>
+ * This class is thread-safe.
+ *
+ * @author jony
+ * @see MultiDigest
+ */
+@SuppressWarnings("unused")
+public class AppendOnlyDigest {
+    /**
+     * The number of bytes at the start and at the end of the hashed range
+     * that are checked before resuming.
+     */
+    public static final int GUARD_SIZE = 4096;
+
+    /**
+     * A file modified less than this many milliseconds before it was hashed
+     * may have changed again within the same clock tick, its guards are
+     * checked even if its size and time did not change.
+     */
+    private static final long RACY_WINDOW_MILLIS = 2000;
+
+    private static final int MAGIC = 0x41504447; // "APDG"
+    private static final int VERSION = 2;
+
+    private final File file;
+    private final String algorithm;
+    /**
+     * The state over <code>[0, offset), null when it can not be resumed.
+     */
+    private ResumableHash running;
+    private long offset = -1;
+    private long lastModified;
+    private long hashedAt;
+    private long headGuard;
+    private long tailGuard;
+    private byte[] current;
+    private int fullPassCount;
+
+    /**
+     * @param file      the file to hash
+     * @param algorithm a {@link MessageDigest} algorithm or {@link MultiDigest#CRC32}
+     * @throws IllegalArgumentException if the algorithm is not supported
+     */
+    public AppendOnlyDigest(File file, String algorithm) {
+        if (file == null) {
+            throw new IllegalArgumentException("File must not be null");
+        }
+        this.file = file;
+        this.algorithm = algorithm;
+        newDigest();
+    }
+
+    /**
+     * Restore a tracker saved by {@link #save(File)}, or construct a new one
+     * if the state is missing, corrupt or was saved for another file or algorithm.
+     *
+     * @param file      the file to hash
+     * @param algorithm a {@link MessageDigest} algorithm or {@link MultiDigest#CRC32}
+     * @param state     the file the state was saved to
+     * @return the tracker, never null
+     */
+    public static AppendOnlyDigest load(File file, String algorithm, File state) {
+        AppendOnlyDigest digest = new AppendOnlyDigest(file, algorithm);
+        if (!state.isFile()) {
+            return digest;
+        }
+        BufferedSource source = null;
+        try {
+            source = Okio.buffer(Okio.source(state));
+            if (source.readInt() != MAGIC || source.readInt() != VERSION
+                    || !source.readUtf8(source.readInt()).equals(file.getAbsolutePath())
+                    || !source.readUtf8(source.readInt()).equalsIgnoreCase(algorithm)) {
+                return digest;
+            }
+            long offset = source.readLong();
+            if (offset < 0) {
+                return digest;
+            }
+            long lastModified = source.readLong();
+            long hashedAt = source.readLong();
+            long headGuard = source.readLong();
+            long tailGuard = source.readLong();
+            int currentLength = source.readInt();
+            if (currentLength < 0) {
+                return digest;
+            }
+            byte[] current = source.readByteArray(currentLength);
+            int stateLength = source.readInt();
+            if (stateLength < -1) {
+                // -1 marks a state that was not exported
+                return digest;
+            }
+            ResumableHash running = null;
+            if (stateLength >= 0) {
+                running = ResumableHash.forAlgorithm(algorithm);
+                running.restoreState(source.readByteArray(stateLength));
+                // a state that does not end where the digest was taken would resume wrongly
+                long count = running.byteCount();
+                if ((count != -1 && count != offset) || !Arrays.equals(running.digest(), current)) {
+                    return digest;
+                }
+            }
+            synchronized (digest) {
+                digest.offset = offset;
+                digest.lastModified = lastModified;
+                digest.hashedAt = hashedAt;
+                digest.headGuard = headGuard;
+                digest.tailGuard = tailGuard;
+                digest.current = current;
+                // null when the state was not exported, growth needs a full pass
+                digest.running = running;
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            // start over
+        } finally {
+            IOUtils.closeQuietly(source);
+        }
+        return digest;
+    }
+
+    /**
+     * Write the offset, the guards, the digest at that offset and, when it can
+     * be exported, the running state to <code>state.
+     *
+     * @param state the file to write
+     * @throws IOException if nothing was hashed yet, or the file can not be written
+     */
+    public synchronized void save(File state) throws IOException {
+        if (current == null) {
+            throw new IOException("Nothing hashed yet");
+        }
+        File temp = new File(state.getPath() + ".tmp");
+        BufferedSink sink = Okio.buffer(Okio.sink(temp));
+        try {
+            sink.writeInt(MAGIC);
+            sink.writeInt(VERSION);
+            writeString(sink, file.getAbsolutePath());
+            writeString(sink, algorithm);
+            sink.writeLong(offset);
+            sink.writeLong(lastModified);
+            sink.writeLong(hashedAt);
+            sink.writeLong(headGuard);
+            sink.writeLong(tailGuard);
+            sink.writeInt(current.length);
+            sink.write(current);
+            byte[] exported = running == null ? null : running.saveState();
+            if (exported == null) {
+                sink.writeInt(-1);
+            } else {
+                sink.writeInt(exported.length);
+                sink.write(exported);
+            }
+        } finally {
+            IOUtils.closeQuietly(sink);
+        }
+        if (!temp.renameTo(state)) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            throw new IOException("Failed to write " + state);
+        }
+    }
+
+    /**
+     * Bring the digest up to date with the file.
+     *
+     * @return a copy of the digest of the whole current content
+     * @throws IOException if the file can not be read
+     */
+    public synchronized byte[] digest() throws IOException {
+        long length = file.length();
+        long modified = file.lastModified();
+        if (current != null && length == offset && modified == lastModified
+                && hashedAt - lastModified >= RACY_WINDOW_MILLIS) {
+            return current.clone();
+        }
+        long now = System.currentTimeMillis();
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            length = raf.length();
+            if (current == null || length < offset || !guardsMatch(raf)) {
+                fullPass(raf, length);
+            } else if (length > offset) {
+                if (running == null) {
+                    fullPass(raf, length);
+                } else {
+                    hash(raf, offset, length);
+                    finishPass(raf, length);
+                }
+            }
+            lastModified = modified;
+            hashedAt = now;
+            return current.clone();
+        } catch (IOException e) {
+            // the running state may be partly updated, start over next time
+            current = null;
+            offset = -1;
+            throw e;
+        } finally {
+            IOUtils.closeQuietly(raf);
+        }
+    }
+
+    /**
+     * @return the lower case hex digest of the whole current content
+     * @throws IOException if the file can not be read
+     */
+    public String hex() throws IOException {
+        return MultiDigest.toHex(digest());
+    }
+
+    /**
+     * @return the number of bytes covered by the last digest, -1 before the first one
+     */
+    public synchronized long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the number of times the file was hashed from the start
+     */
+    public synchronized int getFullPassCount() {
+        return fullPassCount;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    private void newDigest() {
+        running = ResumableHash.forAlgorithm(algorithm);
+    }
+
+    private void fullPass(RandomAccessFile raf, long length) throws IOException {
+        fullPassCount++;
+        if (running == null) {
+            newDigest();
+        } else {
+            running.reset();
+        }
+        hash(raf, 0, length);
+        finishPass(raf, length);
+    }
+
+    /**
+     * Record the digest over <code>[0, length) and the guards of that range.
+     */
+    private void finishPass(RandomAccessFile raf, long length) throws IOException {
+        offset = length;
+        headGuard = guard(raf, 0, Math.min(GUARD_SIZE, length));
+        tailGuard = guard(raf, Math.max(0, length - GUARD_SIZE), length);
+        current = running.digest();
+        if (!running.canResume()) {
+            // the next growth needs a full pass
+            running = null;
+        }
+    }
+
+    private boolean guardsMatch(RandomAccessFile raf) throws IOException {
+        return guard(raf, 0, Math.min(GUARD_SIZE, offset)) == headGuard
+                && guard(raf, Math.max(0, offset - GUARD_SIZE), offset) == tailGuard;
+    }
+
+    private void hash(RandomAccessFile raf, long from, long to) throws IOException {
+        byte[] buffer = FileHasher.threadBuffer();
+        raf.seek(from);
+        while (from < to) {
+            int n = raf.read(buffer, 0, (int) Math.min(buffer.length, to - from));
+            if (n == -1) {
+                throw new IOException("File shrank while being hashed: " + file);
+            }
+            running.update(buffer, 0, n);
+            from += n;
+        }
+    }
+
+    private static void writeString(BufferedSink sink, String s) throws IOException {
+        byte[] bytes = s.getBytes(Charsets.forName(UTF_8));
+        sink.writeInt(bytes.length);
+        sink.write(bytes);
+    }
+
+    /**
+     * @return the CRC-32 of <code>[from, to)
+     */
+    private static long guard(RandomAccessFile raf, long from, long to) throws IOException {
+        byte[] bytes = new byte[(int) (to - from)];
+        raf.seek(from);
+        raf.readFully(bytes);
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,387 @@
+package cn.jony.libutil.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs copies on an {@link Executor} and hands back a {@link Future} for each of them.
+ * <p/>
+ * At most <code>maxConcurrent copies run at the same time, the others wait
+ * in a queue without occupying an executor thread. A copy checks for cancellation
+ * and for its deadline between two chunks, so {@link Future#cancel(boolean)} stops
+ * it quickly and leaves both streams closed.
+ * <p/>
+ * Usage:
+ * <pre>
+ * AsyncCopier copier = new AsyncCopier(executor, 2);
+ * Future&lt;Long&gt; future = copier.copy(src, target, 0, new AsyncCopier.ProgressListener() {
+ *     public void onProgress(long bytesCopied, long totalBytes, long bytesPerSecond) {
+ *         // update the UI
+ *     }
+ * });
+ * </pre>
+ * The result of the future is the number of bytes copied. Copies that fail
+ * report an {@link IOException} through {@link java.util.concurrent.ExecutionException};
+ * a copy past its deadline fails with an {@link InterruptedIOException}, and a
+ * copy the executor rejects fails with its {@link RejectedExecutionException}.
+ * A cancelled copy keeps its slot until it has actually stopped.
+ *
+ * @author jony
+ */
+@SuppressWarnings("unused")
+public class AsyncCopier {
+    /**
+     * The minimum interval between two progress reports of one copy.
+     */
+    public static final long PROGRESS_INTERVAL_MILLIS = 200;
+
+    /**
+     * The number of bytes transferred between two checks for cancellation
+     * when copying between files; stream copies check after every buffer.
+     */
+    private static final long CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * Receives the progress of a copy on the thread running it.
+     */
+    public interface ProgressListener {
+        /**
+         * @param bytesCopied    the number of bytes copied so far
+         * @param totalBytes     the number of bytes to copy, -1 if unknown
+         * @param bytesPerSecond the average throughput since the copy started
+         */
+        void onProgress(long bytesCopied, long totalBytes, long bytesPerSecond);
+    }
+
+    private final Executor executor;
+    private final int maxConcurrent;
+    private final Queue<CopyTask> pending = new ArrayDeque<>();
+    private int running;
+
+    /**
+     * Construct a copier running any number of copies at once.
+     *
+     * @param executor the executor running the copies, not null
+     */
+    public AsyncCopier(Executor executor) {
+        this(executor, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Construct a copier running at most <code>maxConcurrent copies at once.
+     *
+     * @param executor      the executor running the copies, not null
+     * @param maxConcurrent the maximum number of copies running at the same time
+     */
+    public AsyncCopier(Executor executor, int maxConcurrent) {
+        if (executor == null) {
+            throw new IllegalArgumentException("Executor must not be null");
+        }
+        if (maxConcurrent <= 0) {
+            throw new IllegalArgumentException("Max concurrent must be positive, actual: " + maxConcurrent);
+        }
+        this.executor = executor;
+        this.maxConcurrent = maxConcurrent;
+    }
+
+    /**
+     * Copy <code>src to <code>target, replacing its content.
+     *
+     * @param src           the file to read
+     * @param target        the file to write, created with its parent directories if needed
+     * @param timeoutMillis the maximum duration of the copy once started, 0 for none
+     * @param listener      the progress listener, may be null
+     * @return the future of the number of bytes copied
+     */
+    public Future<Long> copy(final File src, final File target, long timeoutMillis, ProgressListener listener) {
+        return submit(new Opener() {
+            @Override
+            InputStream openInput() throws IOException {
+                return new FileInputStream(src);
+            }
+
+            @Override
+            OutputStream openOutput() throws IOException {
+                File parent = target.getParentFile();
+                if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                    throw new IOException("Can't create directory " + parent);
+                }
+                return new FileOutputStream(target);
+            }
+        }, timeoutMillis, listener);
+    }
+
+    /**
+     * Copy <code>input to <code>output. Both streams are closed when
+     * the copy completes, fails or is cancelled.
+     *
+     * @param input         the stream to read
+     * @param output        the stream to write
+     * @param timeoutMillis the maximum duration of the copy once started, 0 for none
+     * @param listener      the progress listener, may be null
+     * @return the future of the number of bytes copied
+     */
+    public Future<Long> copy(final InputStream input, final OutputStream output, long timeoutMillis,
+                             ProgressListener listener) {
+        return submit(new Opener() {
+            @Override
+            InputStream openInput() {
+                return input;
+            }
+
+            @Override
+            OutputStream openOutput() {
+                return output;
+            }
+
+            @Override
+            void discard() {
+                IOUtils.closeQuietly(input);
+                IOUtils.closeQuietly(output);
+            }
+        }, timeoutMillis, listener);
+    }
+
+    /**
+     * @return the number of copies waiting for a free slot
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * @return the number of copies currently running
+     */
+    public synchronized int getRunningCount() {
+        return running;
+    }
+
+    private Future<Long> submit(Opener opener, long timeoutMillis, ProgressListener listener) {
+        if (timeoutMillis < 0) {
+            throw new IllegalArgumentException("Timeout must be non-negative, actual: " + timeoutMillis);
+        }
+        CopyTask task = new CopyTask(new Copy(opener, timeoutMillis, listener));
+        synchronized (this) {
+            if (running < maxConcurrent) {
+                running++;
+            } else {
+                pending.add(task);
+                return task;
+            }
+        }
+        if (!dispatch(task)) {
+            // hand the slot over to a pending copy, or release it
+            finished();
+        }
+        return task;
+    }
+
+    /**
+     * Called when a copy holding a slot returned, or could not be dispatched.
+     */
+    private void finished() {
+        while (true) {
+            CopyTask next;
+            synchronized (this) {
+                do {
+                    next = pending.poll();
+                } while (next != null && next.isCancelled());
+                if (next == null) {
+                    running--;
+                    return;
+                }
+            }
+            if (dispatch(next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return false if the executor rejected the task, which then fails with the rejection
+     */
+    private boolean dispatch(CopyTask task) {
+        try {
+            executor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            task.reject(e);
+            return false;
+        }
+    }
+
+    private static abstract class Opener {
+        abstract InputStream openInput() throws IOException;
+
+        abstract OutputStream openOutput() throws IOException;
+
+        /**
+         * Release what the opener holds when the copy is cancelled before it starts.
+         */
+        void discard() {
+        }
+    }
+
+    private class CopyTask extends FutureTask<Long> {
+        private final Copy copy;
+
+        CopyTask(Copy copy) {
+            super(copy);
+            this.copy = copy;
+        }
+
+        @Override
+        public void run() {
+            try {
+                super.run();
+            } finally {
+                // only now has a cancelled copy stopped using its slot
+                finished();
+            }
+        }
+
+        void reject(RejectedExecutionException e) {
+            if (copy.started.compareAndSet(false, true)) {
+                copy.opener.discard();
+            }
+            setException(e);
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled() && copy.started.compareAndSet(false, true)) {
+                copy.opener.discard();
+            }
+        }
+    }
+
+    private static class Copy implements Callable<Long> {
+        private final Opener opener;
+        private final long timeoutMillis;
+        private final ProgressListener listener;
+        final AtomicBoolean started = new AtomicBoolean();
+
+        private long startNanos;
+        private long deadlineNanos;
+        private long lastReport;
+
+        Copy(Opener opener, long timeoutMillis, ProgressListener listener) {
+            this.opener = opener;
+            this.timeoutMillis = timeoutMillis;
+            this.listener = listener;
+        }
+
+        @Override
+        public Long call() throws IOException {
+            if (!started.compareAndSet(false, true)) {
+                throw new InterruptedIOException("Copy cancelled before it started");
+            }
+            startNanos = System.nanoTime();
+            deadlineNanos = timeoutMillis > 0 ? startNanos + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) : 0;
+            InputStream input = null;
+            OutputStream output = null;
+            try {
+                input = opener.openInput();
+                output = opener.openOutput();
+                long count = 0;
+                if (input instanceof FileInputStream && output instanceof FileOutputStream) {
+                    count = transfer(((FileInputStream) input).getChannel(), ((FileOutputStream) output).getChannel());
+                }
+                // the reported size is only a hint, finish whatever is left through a buffer
+                count = copy(input, output, count);
+                output.flush();
+                report(count, count, true);
+                return count;
+            } finally {
+                IOUtils.closeQuietly(input);
+                IOUtils.closeQuietly(output);
+            }
+        }
+
+        /**
+         * Move as much of <code>input as its size promises with transferTo and
+         * leave its position after the bytes moved.
+         *
+         * @return the number of bytes moved, 0 if <code>input is not seekable
+         */
+        private long transfer(FileChannel input, FileChannel output) throws IOException {
+            long start;
+            long size;
+            try {
+                start = input.position();
+                size = input.size();
+            } catch (IOException e) {
+                // a pipe or FIFO, leave it to the buffered copy
+                return 0;
+            }
+            long position = start;
+            while (position < size) {
+                checkpoint(position - start, size - start);
+                long count = input.transferTo(position, Math.min(size - position, CHUNK_SIZE), output);
+                if (count <= 0) {
+                    break;
+                }
+                position += count;
+            }
+            input.position(position);
+            return position - start;
+        }
+
+        /**
+         * Copy the rest of <code>input, counting on from the <code>count
+         * bytes already copied.
+         */
+        private long copy(InputStream input, OutputStream output, long count) throws IOException {
+            byte[] buffer = BufferPool.takeBytes();
+            try {
+                int n;
+                while (-1 != (n = input.read(buffer))) {
+                    output.write(buffer, 0, n);
+                    count += n;
+                    checkpoint(count, -1);
+                }
+                return count;
+            } finally {
+                BufferPool.recycle(buffer);
+            }
+        }
+
+        private void checkpoint(long count, long total) throws IOException {
+            if (Thread.interrupted()) {
+                throw new InterruptedIOException("Copy cancelled after " + count + " bytes");
+            }
+            if (deadlineNanos != 0 && System.nanoTime() - deadlineNanos > 0) {
+                throw new InterruptedIOException("Copy timed out after " + count + " bytes");
+            }
+            report(count, total, false);
+        }
+
+        private void report(long count, long total, boolean force) {
+            if (listener == null) {
+                return;
+            }
+            long now = System.nanoTime();
+            if (!force && now - lastReport < TimeUnit.MILLISECONDS.toNanos(PROGRESS_INTERVAL_MILLIS)) {
+                return;
+            }
+            lastReport = now;
+            long elapsed = Math.max(1, now - startNanos);
+            listener.onProgress(count, total, (long) (count * 1e9 / elapsed));
+        }
+    }
+}
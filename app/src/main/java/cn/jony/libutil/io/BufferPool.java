@@ -0,0 +1,156 @@
+package cn.jony.libutil.io;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A shared pool of fixed-size <code>byte[] and <code>char[] buffers
+ * for the copy/read loops in {@link IOUtils}.
+ * <p/>
+ * Every thread keeps one buffer of each kind in a thread-local slot; buffers
+ * that do not fit there go to a bounded global free list, anything beyond that
+ * is left to the garbage collector. The pool is thread-safe.
+ * <p/>
+ * Usage:
+ * <pre>
+ * byte[] buffer = BufferPool.takeBytes();
+ * try {
+ *     // use buffer
+ * } finally {
+ *     BufferPool.recycle(buffer);
+ * }
+ * </pre>
+ * A buffer must not be used after it has been recycled, and must not be
+ * recycled twice.
+ *
+ * @author jony
+ */
+@SuppressWarnings("unused")
+public final class BufferPool {
+    /**
+     * The size of the pooled buffers, matching the segment size of okio.
+     */
+    public static final int BUFFER_SIZE = 1024 * 8;
+
+    /**
+     * The maximum number of buffers of each kind kept in the global free list.
+     */
+    private static final int MAX_POOLED = 32;
+
+    private static final Pool<byte[]> BYTES = new Pool<byte[]>() {
+        @Override
+        byte[] create() {
+            return new byte[BUFFER_SIZE];
+        }
+    };
+
+    private static final Pool<char[]> CHARS = new Pool<char[]>() {
+        @Override
+        char[] create() {
+            return new char[BUFFER_SIZE];
+        }
+    };
+
+    private BufferPool() {
+        throw new AssertionError("No instances");
+    }
+
+    /**
+     * @return a byte buffer of {@link #BUFFER_SIZE} bytes
+     */
+    public static byte[] takeBytes() {
+        return BYTES.take();
+    }
+
+    /**
+     * Return a buffer obtained from {@link #takeBytes()} to the pool.
+     *
+     * @param buffer the buffer, null or foreign buffers are ignored
+     */
+    public static void recycle(byte[] buffer) {
+        if (buffer != null && buffer.length == BUFFER_SIZE) {
+            BYTES.recycle(buffer);
+        }
+    }
+
+    /**
+     * @return a char buffer of {@link #BUFFER_SIZE} chars
+     */
+    public static char[] takeChars() {
+        return CHARS.take();
+    }
+
+    /**
+     * Return a buffer obtained from {@link #takeChars()} to the pool.
+     *
+     * @param buffer the buffer, null or foreign buffers are ignored
+     */
+    public static void recycle(char[] buffer) {
+        if (buffer != null && buffer.length == BUFFER_SIZE) {
+            CHARS.recycle(buffer);
+        }
+    }
+
+    /**
+     * @return how many times a pooled buffer could be reused
+     */
+    public static long getHitCount() {
+        return BYTES.hits.get() + CHARS.hits.get();
+    }
+
+    /**
+     * @return how many times a new buffer had to be allocated
+     */
+    public static long getMissCount() {
+        return BYTES.misses.get() + CHARS.misses.get();
+    }
+
+    /**
+     * Reset the hit and miss counters.
+     */
+    public static void resetStats() {
+        BYTES.hits.set(0);
+        BYTES.misses.set(0);
+        CHARS.hits.set(0);
+        CHARS.misses.set(0);
+    }
+
+    private static abstract class Pool<T> {
+        final ThreadLocal<T> local = new ThreadLocal<>();
+        final Queue<T> free = new ConcurrentLinkedQueue<>();
+        final AtomicInteger freeCount = new AtomicInteger();
+        final AtomicLong hits = new AtomicLong();
+        final AtomicLong misses = new AtomicLong();
+
+        abstract T create();
+
+        T take() {
+            T buffer = local.get();
+            if (buffer != null) {
+                local.set(null);
+                hits.incrementAndGet();
+                return buffer;
+            }
+            buffer = free.poll();
+            if (buffer != null) {
+                freeCount.decrementAndGet();
+                hits.incrementAndGet();
+                return buffer;
+            }
+            misses.incrementAndGet();
+            return create();
+        }
+
+        void recycle(T buffer) {
+            if (local.get() == null) {
+                local.set(buffer);
+            } else if (freeCount.incrementAndGet() <= MAX_POOLED) {
+                free.offer(buffer);
+            } else {
+                freeCount.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package cn.jony.libutil.io;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static cn.jony.libutil.Constants.UTF_8;
+
+/**
+ * Cached charset lookup and byte to char decoding with fast paths for the
+ * common charsets.
+ * <p/>
+ * US-ASCII and ISO-8859-1 are decoded by a plain loop, UTF-8 by a loop over
+ * its ASCII prefix before handing the rest to a {@link CharsetDecoder}. The
+ * chars are written straight into the destination array, without going
+ * through an intermediate <code>String. Malformed input is replaced with
+ * <code>U+FFFD, like {@link String#String(byte[], Charset)} does.
+ *
+ * @author jony
+ */
+@SuppressWarnings("unused")
+public final class Charsets {
+    private static final Charset UTF_8_CHARSET = Charset.forName(UTF_8);
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    private static final ConcurrentMap<String, Charset> CACHE = new ConcurrentHashMap<>();
+
+    private Charsets() {
+        throw new AssertionError("No instances");
+    }
+
+    /**
+     * Like {@link Charset#forName(String)}, but looks every name up only once.
+     *
+     * @param encoding the charset name or alias, null means platform default
+     * @return the charset
+     * @throws java.nio.charset.UnsupportedCharsetException if the charset is not supported
+     */
+    public static Charset forName(String encoding) {
+        if (encoding == null) {
+            return Charset.defaultCharset();
+        }
+        Charset charset = CACHE.get(encoding);
+        if (charset == null) {
+            charset = Charset.forName(encoding);
+            CACHE.putIfAbsent(encoding, charset);
+        }
+        return charset;
+    }
+
+    /**
+     * Decode <code>bytes[offset, offset + length) into a new array holding exactly the decoded chars.
+     *
+     * @param bytes   the bytes to decode
+     * @param offset  the index of the first byte
+     * @param length  the number of bytes
+     * @param charset the charset to use, null means platform default
+     * @return the decoded chars
+     */
+    public static char[] toCharArray(byte[] bytes, int offset, int length, Charset charset) {
+        if (charset == null) {
+            charset = Charset.defaultCharset();
+        }
+        char[] chars = new char[maxChars(length, charset)];
+        int n = decode(bytes, offset, length, charset, CharBuffer.wrap(chars));
+        if (n == chars.length) {
+            return chars;
+        }
+        char[] trimmed = new char[n];
+        System.arraycopy(chars, 0, trimmed, 0, n);
+        return trimmed;
+    }
+
+    /**
+     * Decode <code>bytes[offset, offset + length) into <code>output.
+     *
+     * @param bytes   the bytes to decode
+     * @param offset  the index of the first byte
+     * @param length  the number of bytes
+     * @param charset the charset to use, not null
+     * @param output  the destination, with at least {@link #maxChars(int, Charset)} chars remaining
+     * @return the number of chars written
+     * @throws IllegalArgumentException if <code>output may be too small
+     */
+    public static int decode(byte[] bytes, int offset, int length, Charset charset, CharBuffer output) {
+        if (output.remaining() < maxChars(length, charset)) {
+            throw new IllegalArgumentException("Output too small: " + output.remaining() + " for " + length + " bytes");
+        }
+        int start = output.position();
+        int i = 0;
+        boolean ascii = US_ASCII.equals(charset);
+        if (ISO_8859_1.equals(charset)) {
+            if (output.hasArray()) {
+                char[] chars = output.array();
+                int base = output.arrayOffset() + start;
+                for (; i < length; i++) {
+                    chars[base + i] = (char) (bytes[offset + i] & 0xff);
+                }
+                output.position(start + length);
+            } else {
+                for (; i < length; i++) {
+                    output.put((char) (bytes[offset + i] & 0xff));
+                }
+            }
+            return length;
+        }
+        if (ascii || UTF_8_CHARSET.equals(charset)) {
+            // ASCII prefix, shared by US-ASCII and UTF-8
+            if (output.hasArray()) {
+                char[] chars = output.array();
+                int base = output.arrayOffset() + start;
+                byte b;
+                while (i < length && (b = bytes[offset + i]) >= 0) {
+                    chars[base + i] = (char) b;
+                    i++;
+                }
+                output.position(start + i);
+            } else {
+                byte b;
+                while (i < length && (b = bytes[offset + i]) >= 0) {
+                    output.put((char) b);
+                    i++;
+                }
+            }
+            if (i == length) {
+                return length;
+            }
+        }
+        if (ascii) {
+            for (; i < length; i++) {
+                byte b = bytes[offset + i];
+                output.put(b >= 0 ? (char) b : '\uFFFD');
+            }
+            return length;
+        }
+
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        decoder.decode(ByteBuffer.wrap(bytes, offset + i, length - i), output, true);
+        decoder.flush(output);
+        return output.position() - start;
+    }
+
+    /**
+     * @return the maximum number of chars <code>length bytes of <code>charset can decode to
+     */
+    public static int maxChars(int length, Charset charset) {
+        if (UTF_8_CHARSET.equals(charset) || US_ASCII.equals(charset) || ISO_8859_1.equals(charset)) {
+            return length;
+        }
+        return (int) Math.ceil(length * (double) charset.newDecoder().maxCharsPerByte());
+    }
+}
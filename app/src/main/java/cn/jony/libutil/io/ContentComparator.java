@@ -0,0 +1,390 @@
+package cn.jony.libutil.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Block-wise comparison of streams, readers and files.
+ * <p/>
+ * The inputs are read in blocks of {@link BufferPool#BUFFER_SIZE} and
+ * compared a whole block at a time. The <code>mismatch methods report
+ * the offset of the first difference, in the manner of
+ * <code>java.util.Arrays#mismatch</code>:
+ * <ul>
+ * <li>-1 if both inputs have the same content
+ * <li>the index of the first differing element otherwise
+ * <li>the length of the shorter input if it is a prefix of the longer one
+ * </ul>
+ * Files can additionally be compared region by region on an
+ * {@link ExecutorService}, see {@link #mismatch(File, File, ExecutorService, long)}.
+ *
+ * @author jony
+ */
+@SuppressWarnings("unused")
+public final class ContentComparator {
+    /**
+     * The default size of a region compared by one task in
+     * {@link #mismatch(File, File, ExecutorService, long)}.
+     */
+    public static final long DEFAULT_REGION_SIZE = 1024 * 1024 * 16;
+
+    private ContentComparator() {
+        throw new AssertionError("No instances");
+    }
+
+    /**
+     * Find the offset of the first differing byte of two streams.
+     *
+     * @param input1 the first stream
+     * @param input2 the second stream
+     * @return the offset of the first difference, or -1 if the content is equal
+     * @throws IOException if an I/O error occurs
+     */
+    public static long mismatch(InputStream input1, InputStream input2) throws IOException {
+        byte[] buffer1 = BufferPool.takeBytes();
+        byte[] buffer2 = BufferPool.takeBytes();
+        try {
+            long offset = 0;
+            while (true) {
+                int n1 = fill(input1, buffer1);
+                int n2 = fill(input2, buffer2);
+                int i = mismatch(buffer1, buffer2, Math.min(n1, n2));
+                if (i >= 0) {
+                    return offset + i;
+                }
+                if (n1 != n2) {
+                    return offset + Math.min(n1, n2);
+                }
+                if (n1 < buffer1.length) {
+                    return -1;
+                }
+                offset += n1;
+            }
+        } finally {
+            BufferPool.recycle(buffer1);
+            BufferPool.recycle(buffer2);
+        }
+    }
+
+    /**
+     * Find the offset of the first differing char of two readers.
+     *
+     * @param input1 the first reader
+     * @param input2 the second reader
+     * @return the offset of the first difference, or -1 if the content is equal
+     * @throws IOException if an I/O error occurs
+     */
+    public static long mismatch(Reader input1, Reader input2) throws IOException {
+        char[] buffer1 = BufferPool.takeChars();
+        char[] buffer2 = BufferPool.takeChars();
+        try {
+            long offset = 0;
+            while (true) {
+                int n1 = fill(input1, buffer1);
+                int n2 = fill(input2, buffer2);
+                int i = mismatch(buffer1, buffer2, Math.min(n1, n2));
+                if (i >= 0) {
+                    return offset + i;
+                }
+                if (n1 != n2) {
+                    return offset + Math.min(n1, n2);
+                }
+                if (n1 < buffer1.length) {
+                    return -1;
+                }
+                offset += n1;
+            }
+        } finally {
+            BufferPool.recycle(buffer1);
+            BufferPool.recycle(buffer2);
+        }
+    }
+
+    /**
+     * Compare the content of two files. Files of different length are
+     * reported as different without reading them.
+     *
+     * @param file1 the first file
+     * @param file2 the second file
+     * @return true if the content of the files are equal or they both don't exist
+     * @throws IOException if an I/O error occurs
+     */
+    public static boolean contentEquals(File file1, File file2) throws IOException {
+        if (file1.exists() != file2.exists()) {
+            return false;
+        }
+        if (!file1.exists()) {
+            return true;
+        }
+        if (file1.isDirectory() || file2.isDirectory()) {
+            throw new IOException("Can't compare directories, only files");
+        }
+        if (file1.length() != file2.length()) {
+            return false;
+        }
+        if (file1.getCanonicalFile().equals(file2.getCanonicalFile())) {
+            return true;
+        }
+        return mismatch(file1, file2) == -1;
+    }
+
+    /**
+     * Find the offset of the first differing byte of two files.
+     *
+     * @param file1 the first file
+     * @param file2 the second file
+     * @return the offset of the first difference, or -1 if the content is equal
+     * @throws IOException if an I/O error occurs
+     */
+    public static long mismatch(File file1, File file2) throws IOException {
+        return mismatch(file1, file2, null, DEFAULT_REGION_SIZE);
+    }
+
+    /**
+     * Find the offset of the first differing byte of two files, comparing
+     * regions of <code>regionSize bytes in parallel on <code>executor.
+     * <p/>
+     * Tasks for regions after a known difference are cancelled.
+     *
+     * @param file1      the first file
+     * @param file2      the second file
+     * @param executor   the executor running the region tasks, null compares on the calling thread
+     * @param regionSize the number of bytes compared by one task
+     * @return the offset of the first difference, or -1 if the content is equal
+     * @throws IOException if an I/O error occurs or a task fails
+     */
+    public static long mismatch(File file1, File file2, ExecutorService executor, long regionSize)
+            throws IOException {
+        if (regionSize <= 0) {
+            throw new IllegalArgumentException("Region size must be positive, actual: " + regionSize);
+        }
+        FileInputStream input1 = new FileInputStream(file1);
+        FileInputStream input2 = null;
+        Regions regions = null;
+        try {
+            input2 = new FileInputStream(file2);
+            final FileChannel channel1 = input1.getChannel();
+            final FileChannel channel2 = input2.getChannel();
+            long size1 = channel1.size();
+            long size2 = channel2.size();
+            long common = Math.min(size1, size2);
+
+            long result;
+            if (executor == null || common <= regionSize) {
+                result = mismatch(channel1, channel2, 0, common, null);
+            } else {
+                regions = new Regions(channel1, channel2);
+                List<Future<Long>> tasks = new ArrayList<>();
+                for (long start = 0; start < common; start += regionSize) {
+                    tasks.add(executor.submit(regions.task(start, Math.min(common, start + regionSize))));
+                }
+                result = awaitFirst(tasks);
+            }
+
+            if (result == -1 && size1 != size2) {
+                result = common;
+            }
+            return result;
+        } finally {
+            if (regions != null) {
+                // the channels must outlive the reads of the tasks still running
+                regions.close();
+            }
+            IOUtils.closeQuietly(input1);
+            IOUtils.closeQuietly(input2);
+        }
+    }
+
+    /**
+     * Find the index of the first differing byte within the first
+     * <code>length bytes of two arrays.
+     *
+     * @return the index of the first difference, or -1 if the ranges are equal
+     */
+    static int mismatch(byte[] a, byte[] b, int length) {
+        for (int i = 0; i < length; i++) {
+            if (a[i] != b[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find the index of the first differing char within the first
+     * <code>length chars of two arrays.
+     *
+     * @return the index of the first difference, or -1 if the ranges are equal
+     */
+    static int mismatch(char[] a, char[] b, int length) {
+        for (int i = 0; i < length; i++) {
+            if (a[i] != b[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Read from <code>input until <code>buffer is full or the end of
+     * the stream is reached.
+     *
+     * @return the number of bytes read, less than the buffer length only at the end of the stream
+     */
+    static int fill(InputStream input, byte[] buffer) throws IOException {
+        int total = 0;
+        int n;
+        while (total < buffer.length && -1 != (n = input.read(buffer, total, buffer.length - total))) {
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * Read from <code>input until <code>buffer is full or the end of
+     * the stream is reached.
+     *
+     * @return the number of chars read, less than the buffer length only at the end of the stream
+     */
+    static int fill(Reader input, char[] buffer) throws IOException {
+        int total = 0;
+        int n;
+        while (total < buffer.length && -1 != (n = input.read(buffer, total, buffer.length - total))) {
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * Compare the range [from, to) of two channels with positional reads,
+     * which leaves the channel positions untouched and is safe from several threads.
+     *
+     * @param regions the comparison the range is part of, the range is abandoned
+     *                once it is closed; null if it is compared alone
+     */
+    private static long mismatch(FileChannel channel1, FileChannel channel2, long from, long to, Regions regions)
+            throws IOException {
+        byte[] buffer1 = BufferPool.takeBytes();
+        byte[] buffer2 = BufferPool.takeBytes();
+        try {
+            long position = from;
+            while (position < to && (regions == null || !regions.closed)) {
+                int length = (int) Math.min(buffer1.length, to - position);
+                readFully(channel1, ByteBuffer.wrap(buffer1, 0, length), position);
+                readFully(channel2, ByteBuffer.wrap(buffer2, 0, length), position);
+                int i = mismatch(buffer1, buffer2, length);
+                if (i >= 0) {
+                    return position + i;
+                }
+                position += length;
+            }
+            return -1;
+        } finally {
+            BufferPool.recycle(buffer1);
+            BufferPool.recycle(buffer2);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                throw new IOException("File truncated while comparing at " + position);
+            }
+            position += n;
+        }
+    }
+
+    /**
+     * The region tasks of one parallel comparison. Once it is closed, tasks that
+     * did not start yet return at once and running ones stop after their current
+     * block; {@link #close()} waits for them.
+     */
+    private static final class Regions {
+        private final FileChannel channel1;
+        private final FileChannel channel2;
+        volatile boolean closed;
+        private int running;
+
+        Regions(FileChannel channel1, FileChannel channel2) {
+            this.channel1 = channel1;
+            this.channel2 = channel2;
+        }
+
+        Callable<Long> task(final long from, final long to) {
+            return new Callable<Long>() {
+                @Override
+                public Long call() throws IOException {
+                    synchronized (Regions.this) {
+                        if (closed) {
+                            return -1L;
+                        }
+                        running++;
+                    }
+                    try {
+                        return mismatch(channel1, channel2, from, to, Regions.this);
+                    } finally {
+                        synchronized (Regions.this) {
+                            if (--running == 0) {
+                                Regions.this.notifyAll();
+                            }
+                        }
+                    }
+                }
+            };
+        }
+
+        synchronized void close() {
+            closed = true;
+            boolean interrupted = false;
+            while (running > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    // the tasks stop within a block, keep waiting
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static long awaitFirst(List<Future<Long>> tasks) throws IOException {
+        try {
+            for (int i = 0; i < tasks.size(); i++) {
+                long result = tasks.get(i).get();
+                if (result != -1) {
+                    return result;
+                }
+            }
+            return -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while comparing files");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            for (Future<Long> task : tasks) {
+                task.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package cn.jony.libutil.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import okio.Buffer;
+import okio.Okio;
+import okio.Source;
+
+/**
+ * An output stream that keeps its data in memory until it grows past a
+ * threshold, and then moves it to a temporary file.
+ * <p/>
+ * Small outputs never touch the disk while large ones never occupy more than
+ * <code>threshold bytes of heap. Whichever storage is used, the content is
+ * read back through {@link #source()}, {@link #inputStream()} or
+ * {@link #writeTo(OutputStream)}:
+ * <pre>
+ * DeferredOutputBuffer buffer = new DeferredOutputBuffer(1024 * 1024, context.getCacheDir());
+ * try {
+ *     IOUtils.copyLarge(input, buffer);
+ *     buffer.close();
+ *     upload(buffer.source(), buffer.size());
+ * } finally {
+ *     buffer.delete();
+ * }
+ * </pre>
+ * {@link #delete()} must be called to remove the temporary file once the
+ * content is not needed any more.
+ * <p/>
+ * This class is not thread-safe.
+ *
+ * @author jony
+ */
+@SuppressWarnings("unused")
+public class DeferredOutputBuffer extends OutputStream {
+    private final long threshold;
+    private final File directory;
+
+    private final Buffer memory = new Buffer();
+    private File file;
+    private OutputStream fileOutput;
+    private long size;
+    private boolean closed;
+    private boolean deleted;
+
+    /**
+     * Construct a buffer spilling to the default temporary directory.
+     *
+     * @param threshold the maximum number of bytes kept in memory
+     */
+    public DeferredOutputBuffer(long threshold) {
+        this(threshold, null);
+    }
+
+    /**
+     * @param threshold the maximum number of bytes kept in memory
+     * @param directory the directory of the temporary file, null for the default one
+     */
+    public DeferredOutputBuffer(long threshold, File directory) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Threshold must not be negative, actual: " + threshold);
+        }
+        this.threshold = threshold;
+        this.directory = directory;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        checkWritable(1);
+        if (fileOutput != null) {
+            fileOutput.write(b);
+        } else {
+            memory.writeByte(b);
+        }
+        size++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        checkWritable(len);
+        if (fileOutput != null) {
+            fileOutput.write(b, off, len);
+        } else {
+            memory.write(b, off, len);
+        }
+        size += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (fileOutput != null) {
+            fileOutput.flush();
+        }
+    }
+
+    /**
+     * Finish writing. The content can be read afterwards.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (fileOutput != null) {
+            fileOutput.close();
+        }
+    }
+
+    /**
+     * @return the number of bytes written so far
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return true while the content is held in memory
+     */
+    public boolean isInMemory() {
+        return file == null;
+    }
+
+    /**
+     * @return the temporary file holding the content, or null while it is held in memory
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Open a new source over the whole content. Each call starts from the first
+     * byte, the buffer itself is left untouched.
+     *
+     * @return the content, to be closed by the caller
+     * @throws IOException if the buffer is not closed or the temporary file can not be opened
+     */
+    public Source source() throws IOException {
+        checkReadable();
+        if (file != null) {
+            return Okio.source(file);
+        }
+        return memory.clone();
+    }
+
+    /**
+     * @return a new stream over the whole content, to be closed by the caller
+     * @throws IOException if the buffer is not closed or the temporary file can not be opened
+     * @see #source()
+     */
+    public InputStream inputStream() throws IOException {
+        return Okio.buffer(source()).inputStream();
+    }
+
+    /**
+     * Write the whole content to <code>output.
+     *
+     * @param output the stream to write to, not closed
+     * @return the number of bytes written
+     * @throws IOException if the buffer is not closed or an I/O error occurs
+     */
+    public long writeTo(OutputStream output) throws IOException {
+        checkReadable();
+        if (file == null) {
+            memory.copyTo(output);
+            return size;
+        }
+        InputStream input = inputStream();
+        try {
+            return IOUtils.copyLarge(input, output);
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    /**
+     * @return the whole content
+     * @throws IOException if the buffer is not closed, the content is larger than
+     *                     an array can hold or an I/O error occurs
+     */
+    public byte[] toByteArray() throws IOException {
+        checkReadable();
+        if (file == null) {
+            return memory.clone().readByteArray();
+        }
+        InputStream input = inputStream();
+        try {
+            return IOUtils.toByteArray(input);
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    /**
+     * Close the buffer and discard its content, removing the temporary file if any.
+     */
+    public void delete() {
+        closed = true;
+        deleted = true;
+        IOUtils.closeQuietly(fileOutput);
+        fileOutput = null;
+        if (file != null) {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            file = null;
+        }
+        memory.clear();
+        size = 0;
+    }
+
+    private void checkWritable(int count) throws IOException {
+        if (closed) {
+            throw new IOException("DeferredOutputBuffer is closed");
+        }
+        if (fileOutput == null && size + count > threshold) {
+            spill();
+        }
+    }
+
+    private void checkReadable() throws IOException {
+        if (!closed) {
+            throw new IOException("DeferredOutputBuffer must be closed before reading");
+        }
+        if (deleted) {
+            throw new IOException("DeferredOutputBuffer has been deleted");
+        }
+    }
+
+    private void spill() throws IOException {
+        File temp = File.createTempFile("deferred", ".tmp", directory);
+        OutputStream output = null;
+        try {
+            output = Okio.buffer(Okio.sink(temp)).outputStream();
+            // moves the bytes, the memory buffer is empty afterwards
+            memory.writeTo(output);
+        } catch (IOException e) {
+            IOUtils.closeQuietly(output);
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            throw e;
+        }
+        file = temp;
+        fileOutput = output;
+    }
+}
@@ -0,0 +1,257 @@
+package cn.jony.libutil.io;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A shared pool of direct {@link ByteBuffer}s for channel transfers.
+ * <p/>
+ * Buffers come in a few size classes, a request is served by the smallest
+ * class that fits. The direct memory owned by the pool, idle or in use, is
+ * capped by {@link #setCapacityLimit(long)}; once the cap is reached idle
+ * buffers are dropped, and if that is not enough a heap buffer is handed out
+ * instead, so callers never fail. Direct memory is only returned to the system
+ * when the garbage collector reclaims a dropped buffer. The pool is thread-safe.
+ * <p/>
+ * Usage:
+ * <pre>
+ * ByteBuffer buffer = DirectBufferPool.acquire(64 * 1024);
+ * try {
+ *     // use buffer
+ * } finally {
+ *     DirectBufferPool.release(buffer);
+ * }
+ * </pre>
+ * A buffer must not be used after it has been released, and must not be
+ * released twice. With {@link #setLeakDetection(boolean)} enabled, as in debug
+ * builds, both mistakes throw and {@link #getLeaks()} reports where every
+ * unreleased buffer was acquired.
+ *
+ * @author jony
+ * @see BufferPool
+ */
+@SuppressWarnings("unused")
+public final class DirectBufferPool {
+    /**
+     * The capacities of the pooled buffers.
+     */
+    private static final int[] SIZE_CLASSES = {16 * 1024, 64 * 1024, 256 * 1024, 1024 * 1024};
+
+    /**
+     * The default maximum number of bytes of direct memory owned by the pool.
+     */
+    public static final long DEFAULT_CAPACITY_LIMIT = 32 * 1024 * 1024;
+
+    @SuppressWarnings("unchecked")
+    private static final Queue<ByteBuffer>[] IDLE = (Queue<ByteBuffer>[]) new Queue<?>[SIZE_CLASSES.length];
+
+    static {
+        for (int i = 0; i < IDLE.length; i++) {
+            IDLE[i] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    private static final AtomicLong ALLOCATED_BYTES = new AtomicLong();
+    private static final AtomicLong IN_USE_BYTES = new AtomicLong();
+    private static final AtomicLong ACQUIRE_COUNT = new AtomicLong();
+    private static final AtomicLong HIT_COUNT = new AtomicLong();
+    private static final AtomicLong HEAP_FALLBACK_COUNT = new AtomicLong();
+
+    private static final Map<ByteBuffer, Throwable> OUTSTANDING = new IdentityHashMap<>();
+
+    private static volatile long capacityLimit = DEFAULT_CAPACITY_LIMIT;
+    private static volatile boolean leakDetection;
+
+    private DirectBufferPool() {
+        throw new AssertionError("No instances");
+    }
+
+    /**
+     * Take a cleared buffer of at least <code>capacity bytes.
+     *
+     * @param capacity the minimum capacity
+     * @return a direct buffer, or a heap buffer if the capacity limit is reached
+     */
+    public static ByteBuffer acquire(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive, actual: " + capacity);
+        }
+        ACQUIRE_COUNT.incrementAndGet();
+        int sizeClass = sizeClassOf(capacity);
+        ByteBuffer buffer = null;
+        if (sizeClass >= 0) {
+            buffer = IDLE[sizeClass].poll();
+            if (buffer != null) {
+                HIT_COUNT.incrementAndGet();
+            }
+        }
+        if (buffer == null) {
+            int size = sizeClass >= 0 ? SIZE_CLASSES[sizeClass] : capacity;
+            if (!reserve(size)) {
+                trim();
+                if (!reserve(size)) {
+                    HEAP_FALLBACK_COUNT.incrementAndGet();
+                    return ByteBuffer.allocate(capacity);
+                }
+            }
+            buffer = ByteBuffer.allocateDirect(size);
+        }
+        IN_USE_BYTES.addAndGet(buffer.capacity());
+        if (leakDetection) {
+            synchronized (OUTSTANDING) {
+                OUTSTANDING.put(buffer, new Throwable("Buffer acquired here"));
+            }
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Return a buffer obtained from {@link #acquire(int)} to the pool.
+     *
+     * @param buffer the buffer, null or heap buffers are ignored
+     * @throws IllegalStateException with leak detection enabled, if the buffer
+     *                               is not currently acquired from this pool
+     */
+    public static void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) {
+            return;
+        }
+        if (leakDetection) {
+            synchronized (OUTSTANDING) {
+                if (OUTSTANDING.remove(buffer) == null) {
+                    throw new IllegalStateException("Buffer released twice or not acquired from this pool");
+                }
+            }
+        }
+        int capacity = buffer.capacity();
+        IN_USE_BYTES.addAndGet(-capacity);
+        int sizeClass = sizeClassOf(capacity);
+        if (sizeClass >= 0 && SIZE_CLASSES[sizeClass] == capacity) {
+            buffer.clear();
+            IDLE[sizeClass].offer(buffer);
+        } else {
+            // larger than every size class, left to the garbage collector
+            ALLOCATED_BYTES.addAndGet(-capacity);
+        }
+    }
+
+    /**
+     * Drop all idle buffers.
+     */
+    public static void trim() {
+        for (Queue<ByteBuffer> queue : IDLE) {
+            ByteBuffer buffer;
+            while ((buffer = queue.poll()) != null) {
+                ALLOCATED_BYTES.addAndGet(-buffer.capacity());
+            }
+        }
+    }
+
+    /**
+     * @param limit the maximum number of bytes of direct memory owned by the pool
+     */
+    public static void setCapacityLimit(long limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Capacity limit must not be negative, actual: " + limit);
+        }
+        capacityLimit = limit;
+        if (ALLOCATED_BYTES.get() > limit) {
+            trim();
+        }
+    }
+
+    public static long getCapacityLimit() {
+        return capacityLimit;
+    }
+
+    /**
+     * Track every acquired buffer, typically enabled in debug builds only since
+     * it records a stack trace per acquisition. Change it before any buffer is
+     * acquired, buffers acquired before enabling it can not be released afterwards.
+     */
+    public static void setLeakDetection(boolean enabled) {
+        synchronized (OUTSTANDING) {
+            leakDetection = enabled;
+            OUTSTANDING.clear();
+        }
+    }
+
+    /**
+     * @return one throwable per buffer acquired and not released since leak
+     * detection was enabled, its stack trace showing where it was acquired
+     */
+    public static List<Throwable> getLeaks() {
+        synchronized (OUTSTANDING) {
+            return new ArrayList<>(OUTSTANDING.values());
+        }
+    }
+
+    /**
+     * @return the number of bytes of direct memory owned by the pool, idle or in use
+     */
+    public static long getAllocatedBytes() {
+        return ALLOCATED_BYTES.get();
+    }
+
+    /**
+     * @return the number of bytes of the direct buffers currently acquired
+     */
+    public static long getInUseBytes() {
+        return IN_USE_BYTES.get();
+    }
+
+    public static long getAcquireCount() {
+        return ACQUIRE_COUNT.get();
+    }
+
+    /**
+     * @return the number of acquisitions served by an idle buffer
+     */
+    public static long getHitCount() {
+        return HIT_COUNT.get();
+    }
+
+    /**
+     * @return the number of acquisitions served by a heap buffer because of the capacity limit
+     */
+    public static long getHeapFallbackCount() {
+        return HEAP_FALLBACK_COUNT.get();
+    }
+
+    public static void resetStats() {
+        ACQUIRE_COUNT.set(0);
+        HIT_COUNT.set(0);
+        HEAP_FALLBACK_COUNT.set(0);
+    }
+
+    /**
+     * @return the index of the smallest size class holding <code>capacity bytes, or -1
+     */
+    private static int sizeClassOf(int capacity) {
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            if (capacity <= SIZE_CLASSES[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean reserve(int size) {
+        while (true) {
+            long allocated = ALLOCATED_BYTES.get();
+            if (allocated + size > capacityLimit) {
+                return false;
+            }
+            if (ALLOCATED_BYTES.compareAndSet(allocated, allocated + size)) {
+                return true;
+            }
+        }
+    }
+}
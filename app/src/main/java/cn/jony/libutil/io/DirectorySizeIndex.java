@@ -0,0 +1,380 @@
+package cn.jony.libutil.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
+
+import static cn.jony.libutil.Constants.UTF_8;
+
+/**
+ * A persistent index of the sizes of the directories under a root, for
+ * answering repeated size queries without walking every file.
+ * <p/>
+ * For every directory the index keeps the bytes of the files directly in it,
+ * the aggregate size of its subtree and its modification time. Creating,
+ * deleting or renaming an entry changes the modification time of its
+ * directory, so a query only stats the directories and lists again the ones
+ * whose time changed. A directory modified too close to its listing for the
+ * file system clock to tell is listed again on the next query.
+ * <p/>
+ * Writing into an existing file does not change the time of its directory.
+ * Writers keep the index exact with {@link #adjust(File, long)}, or
+ * {@link #invalidate(File)} when the change is unknown:
+ * <pre>
+ * DirectorySizeIndex index = DirectorySizeIndex.open(cacheDir, indexFile);
+ * if (index.size() &gt; quota) {
+ *     evict();
+ * }
+ * index.save(indexFile);
+ * </pre>
+ * Links to directories are not followed and count as 0 bytes, links to files
+ * count the size of their target. The index file must not lie under the root.
+ * This class is thread-safe.
+ *
+ * @author jony
+ * @see DirectoryWalker
+ */
+@SuppressWarnings("unused")
+public class DirectorySizeIndex {
+    /**
+     * Directories modified less than this many milliseconds before they were
+     * listed are listed again, to cover coarse file system clocks like FAT's.
+     */
+    private static final long RACY_WINDOW_MILLIS = 2000;
+
+    private static final int MAGIC = 0x44534958; // "DSIX"
+    private static final int VERSION = 1;
+
+    private final File root;
+    private final Node rootNode;
+
+    /**
+     * Construct an empty index, filled by the first query.
+     *
+     * @param root the directory to index
+     */
+    public DirectorySizeIndex(File root) {
+        this(root, new Node());
+    }
+
+    private DirectorySizeIndex(File root, Node rootNode) {
+        if (root == null) {
+            throw new IllegalArgumentException("Root must not be null");
+        }
+        this.root = root.getAbsoluteFile();
+        this.rootNode = rootNode;
+    }
+
+    /**
+     * Load the index of <code>root from <code>indexFile, or construct an empty one.
+     *
+     * @param root      the indexed directory
+     * @param indexFile the file the index was saved to
+     * @return the index, never null
+     */
+    public static DirectorySizeIndex open(File root, File indexFile) {
+        DirectorySizeIndex index = load(root, indexFile);
+        return index != null ? index : new DirectorySizeIndex(root);
+    }
+
+    /**
+     * Load the index of <code>root from <code>indexFile.
+     *
+     * @param root      the indexed directory
+     * @param indexFile the file the index was saved to
+     * @return the index, or null if there is none, it is corrupt or it indexes another root
+     */
+    public static DirectorySizeIndex load(File root, File indexFile) {
+        if (!indexFile.isFile()) {
+            return null;
+        }
+        BufferedSource source = null;
+        try {
+            source = Okio.buffer(Okio.source(indexFile));
+            if (source.readInt() != MAGIC || source.readInt() != VERSION) {
+                return null;
+            }
+            String path = readString(source);
+            if (!path.equals(root.getAbsolutePath())) {
+                return null;
+            }
+            return new DirectorySizeIndex(root, readNode(source));
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        } finally {
+            IOUtils.closeQuietly(source);
+        }
+    }
+
+    /**
+     * Write this index to <code>indexFile.
+     *
+     * @param indexFile the file to write, outside of the root
+     * @throws IOException if the file can not be written
+     */
+    public synchronized void save(File indexFile) throws IOException {
+        File temp = new File(indexFile.getPath() + ".tmp");
+        BufferedSink sink = Okio.buffer(Okio.sink(temp));
+        try {
+            sink.writeInt(MAGIC);
+            sink.writeInt(VERSION);
+            writeString(sink, root.getPath());
+            writeNode(sink, rootNode);
+        } finally {
+            IOUtils.closeQuietly(sink);
+        }
+        if (!temp.renameTo(indexFile)) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            throw new IOException("Failed to write " + indexFile);
+        }
+    }
+
+    public File getRoot() {
+        return root;
+    }
+
+    /**
+     * @return the size in bytes of the root, listing again the directories that changed
+     */
+    public synchronized long size() {
+        return refresh(rootNode, root, System.currentTimeMillis());
+    }
+
+    /**
+     * @param dir a directory under the root, or the root itself
+     * @return its size in bytes, listing again the directories of its subtree that changed
+     */
+    public synchronized long size(File dir) {
+        String[] names = relativeNames(dir);
+        Node[] path = lookup(names);
+        if (path == null) {
+            // not listed yet, or created since the last listing of its parent
+            refresh(rootNode, root, System.currentTimeMillis());
+            path = lookup(names);
+            if (path == null) {
+                return 0;
+            }
+        }
+        refresh(path[path.length - 1], dir.getAbsoluteFile(), System.currentTimeMillis());
+        for (int i = path.length - 2; i >= 0; i--) {
+            path[i].totalBytes = path[i].sum();
+        }
+        return path[path.length - 1].totalBytes;
+    }
+
+    /**
+     * Record that a file under the root grew or shrank. Does nothing if the
+     * directory holding it was not listed yet.
+     *
+     * @param file  the file written, truncated or deleted
+     * @param delta the change of its size in bytes, negative when it shrank
+     */
+    public synchronized void adjust(File file, long delta) {
+        String[] names = relativeNames(file.getAbsoluteFile().getParentFile());
+        Node[] path = lookup(names);
+        if (path == null) {
+            return;
+        }
+        path[path.length - 1].ownBytes += delta;
+        for (Node node : path) {
+            node.totalBytes += delta;
+        }
+    }
+
+    /**
+     * Make the next query list again the directory holding <code>file, or
+     * <code>file itself if it is an indexed directory.
+     *
+     * @param file a file or directory under the root
+     */
+    public synchronized void invalidate(File file) {
+        Node[] path = lookup(relativeNames(file));
+        if (path == null) {
+            path = lookup(relativeNames(file.getAbsoluteFile().getParentFile()));
+        }
+        if (path != null) {
+            path[path.length - 1].dirty = true;
+        }
+    }
+
+    /**
+     * Drop everything indexed, the next query walks the whole tree.
+     */
+    public synchronized void clear() {
+        rootNode.children = null;
+        rootNode.dirty = true;
+    }
+
+    /**
+     * Bring <code>node up to date with <code>dir, listing it again if it changed.
+     *
+     * @return the size of the subtree
+     */
+    private static long refresh(Node node, File dir, long now) {
+        long lastModified = dir.lastModified();
+        if (lastModified == 0) {
+            // gone
+            node.children = null;
+            node.ownBytes = 0;
+            node.totalBytes = 0;
+            node.dirty = true;
+            return 0;
+        }
+        if (node.dirty || node.children == null || node.lastModified != lastModified) {
+            list(node, dir, lastModified, now);
+        }
+        long total = node.ownBytes;
+        for (Map.Entry<String, Node> entry : node.children.entrySet()) {
+            total += refresh(entry.getValue(), new File(dir, entry.getKey()), now);
+        }
+        node.totalBytes = total;
+        return total;
+    }
+
+    private static void list(Node node, File dir, long lastModified, long now) {
+        File[] entries = dir.listFiles();
+        Map<String, Node> children = new HashMap<>();
+        long ownBytes = 0;
+        if (entries != null) {
+            File canonicalDir = null;
+            boolean resolved = false;
+            for (File entry : entries) {
+                if (entry.isDirectory()) {
+                    if (!resolved) {
+                        canonicalDir = DirectoryWalker.canonicalParentOf(entry);
+                        resolved = true;
+                    }
+                    if (!DirectoryWalker.isSymlink(entry, canonicalDir)) {
+                        String name = entry.getName();
+                        Node child = node.children != null ? node.children.get(name) : null;
+                        children.put(name, child != null ? child : new Node());
+                    }
+                } else {
+                    ownBytes += entry.length();
+                }
+            }
+        }
+        node.children = children;
+        node.ownBytes = ownBytes;
+        node.lastModified = lastModified;
+        node.dirty = now - lastModified < RACY_WINDOW_MILLIS;
+    }
+
+    /**
+     * @return the names leading from the root to <code>file, empty for the root
+     * @throws IllegalArgumentException if <code>file is not under the root
+     */
+    private String[] relativeNames(File file) {
+        String rootPath = root.getPath();
+        String path = file.getAbsolutePath();
+        if (path.equals(rootPath)) {
+            return new String[0];
+        }
+        String prefix = rootPath.endsWith(File.separator) ? rootPath : rootPath + File.separatorChar;
+        if (!path.startsWith(prefix)) {
+            throw new IllegalArgumentException(file + " is not under " + root);
+        }
+        return path.substring(prefix.length()).split(Pattern.quote(File.separator));
+    }
+
+    /**
+     * @return the nodes from the root to the one named by <code>names, or null if it is not indexed
+     */
+    private Node[] lookup(String[] names) {
+        Node[] path = new Node[names.length + 1];
+        path[0] = rootNode;
+        for (int i = 0; i < names.length; i++) {
+            Map<String, Node> children = path[i].children;
+            if (children == null || (path[i + 1] = children.get(names[i])) == null) {
+                return null;
+            }
+        }
+        return path;
+    }
+
+    private static void writeNode(BufferedSink sink, Node node) throws IOException {
+        sink.writeLong(node.lastModified);
+        sink.writeByte(node.dirty || node.children == null ? 1 : 0);
+        LineIndex.writeVarLong(sink, node.ownBytes);
+        Map<String, Node> children = node.children;
+        LineIndex.writeVarLong(sink, children == null ? 0 : children.size());
+        if (children != null) {
+            for (Map.Entry<String, Node> entry : children.entrySet()) {
+                writeString(sink, entry.getKey());
+                writeNode(sink, entry.getValue());
+            }
+        }
+    }
+
+    private static Node readNode(BufferedSource source) throws IOException {
+        Node node = new Node();
+        node.lastModified = source.readLong();
+        node.dirty = source.readByte() != 0;
+        node.ownBytes = LineIndex.readVarLong(source);
+        long count = LineIndex.readVarLong(source);
+        node.children = new HashMap<>();
+        for (long i = 0; i < count; i++) {
+            String name = readString(source);
+            node.children.put(name, readNode(source));
+        }
+        node.totalBytes = node.sum();
+        return node;
+    }
+
+    private static String readString(BufferedSource source) throws IOException {
+        long length = LineIndex.readVarLong(source);
+        if (length < 0 || length > Integer.MAX_VALUE) {
+            throw new IOException("Malformed index");
+        }
+        return source.readUtf8(length);
+    }
+
+    private static void writeString(BufferedSink sink, String s) throws IOException {
+        byte[] bytes = s.getBytes(Charsets.forName(UTF_8));
+        LineIndex.writeVarLong(sink, bytes.length);
+        sink.write(bytes);
+    }
+
+    /**
+     * The indexed state of one directory.
+     */
+    private static final class Node {
+        /**
+         * The modification time of the directory when it was listed.
+         */
+        long lastModified;
+        /**
+         * The bytes of the files directly in the directory.
+         */
+        long ownBytes;
+        /**
+         * The bytes of the whole subtree, as of the last query.
+         */
+        long totalBytes;
+        /**
+         * Whether the directory must be listed again regardless of its time.
+         */
+        boolean dirty;
+        /**
+         * The subdirectories by name, null until the directory is listed.
+         */
+        Map<String, Node> children;
+
+        long sum() {
+            long total = ownBytes;
+            if (children != null) {
+                for (Node child : children.values()) {
+                    total += child.totalBytes;
+                }
+            }
+            return total;
+        }
+    }
+}
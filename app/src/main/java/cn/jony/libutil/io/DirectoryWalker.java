@@ -0,0 +1,496 @@
+package cn.jony.libutil.io;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Walks a directory tree, listing directories in parallel on an {@link Executor}.
+ * <p/>
+ * Every directory is listed by its own task. A task never waits for another
+ * one: a directory is completed, and handed to
+ * {@link Visitor#postVisitDirectory(File, int)}, by whichever task finishes its
+ * last child, so a bounded thread pool can walk a tree of any depth.
+ * Without an executor the tree is walked on the calling thread.
+ * <p/>
+ * {@link #walk(File, Visitor)} blocks until the walk completes. Called from a
+ * thread of {@link #sharedExecutor()} or from a visitor running in a walk
+ * task, it walks on the calling thread rather than wait for the pool it occupies. Other executors
+ * can not be recognized: do not call <code>walk from a task of the
+ * executor it uses, or a pool whose threads all wait would deadlock.
+ * <p/>
+ * Entries are filtered by {@link #setFilter(FileFilter)}, a rejected directory
+ * is not entered. Directories deeper than {@link #setMaxDepth(int)} are
+ * visited but not listed. Symbolic links, the root included, are handled according to
+ * {@link #setSymlinkPolicy(SymlinkPolicy)}. A directory that can not be
+ * listed is treated as empty.
+ * <p/>
+ * Computing the size of a tree:
+ * <pre>
+ * long bytes = new DirectoryWalker().walk(dir, null).getTotalBytes();
+ * </pre>
+ * The visitor is called concurrently from the executor threads.
+ *
+ * @author jony
+ */
+@SuppressWarnings("unused")
+public class DirectoryWalker {
+
+    /**
+     * How symbolic links are handled.
+     */
+    public enum SymlinkPolicy {
+        /**
+         * Treat links like their targets; a link to a directory is entered.
+         * A link cycle makes the walk run until the paths get too long.
+         */
+        FOLLOW,
+        /**
+         * Visit links as files of size 0, a link to a directory is not entered.
+         * Deleting the visited files deletes the links, not their targets.
+         */
+        NO_FOLLOW,
+        /**
+         * Ignore links entirely.
+         */
+        SKIP
+    }
+
+    /**
+     * Receives the entries of a walk. All methods may be called concurrently.
+     */
+    public interface Visitor {
+        /**
+         * Called before the entries of a directory are visited.
+         *
+         * @param dir   the directory
+         * @param depth its depth, the root being at depth 0
+         * @return true to visit its entries, false to skip them
+         */
+        boolean preVisitDirectory(File dir, int depth) throws IOException;
+
+        /**
+         * @param file  a file, or a link with {@link SymlinkPolicy#NO_FOLLOW}
+         * @param size  its length in bytes, 0 for a link
+         * @param depth its depth, the root being at depth 0
+         */
+        void visitFile(File file, long size, int depth) throws IOException;
+
+        /**
+         * Called once all entries of a directory have been visited.
+         *
+         * @param dir   the directory
+         * @param depth its depth, the root being at depth 0
+         */
+        void postVisitDirectory(File dir, int depth) throws IOException;
+    }
+
+    /**
+     * The totals of a walk.
+     */
+    public static final class Result {
+        private final long fileCount;
+        private final long directoryCount;
+        private final long totalBytes;
+
+        Result(long fileCount, long directoryCount, long totalBytes) {
+            this.fileCount = fileCount;
+            this.directoryCount = directoryCount;
+            this.totalBytes = totalBytes;
+        }
+
+        /**
+         * @return the number of files visited
+         */
+        public long getFileCount() {
+            return fileCount;
+        }
+
+        /**
+         * @return the number of directories visited, including the root
+         */
+        public long getDirectoryCount() {
+            return directoryCount;
+        }
+
+        /**
+         * @return the sum of the sizes of the files visited
+         */
+        public long getTotalBytes() {
+            return totalBytes;
+        }
+    }
+
+    private static volatile ExecutorService sharedExecutor;
+
+    /**
+     * True on the threads of {@link #sharedExecutor()} and while a walk task
+     * runs; a walk started there does not use the executor.
+     */
+    private static final ThreadLocal<Boolean> WORKER = new ThreadLocal<Boolean>() {
+        @Override
+        protected Boolean initialValue() {
+            return Boolean.FALSE;
+        }
+    };
+
+    private Executor executor = sharedExecutor();
+    private FileFilter filter;
+    private int maxDepth = Integer.MAX_VALUE;
+    private SymlinkPolicy symlinkPolicy = SymlinkPolicy.NO_FOLLOW;
+
+    /**
+     * @return a process-wide pool of daemon threads, sized for file system work
+     */
+    public static ExecutorService sharedExecutor() {
+        if (sharedExecutor == null) {
+            synchronized (DirectoryWalker.class) {
+                if (sharedExecutor == null) {
+                    int threads = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors() * 2));
+                    sharedExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                        private final AtomicInteger count = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(final Runnable r) {
+                            Runnable worker = new Runnable() {
+                                @Override
+                                public void run() {
+                                    WORKER.set(Boolean.TRUE);
+                                    r.run();
+                                }
+                            };
+                            Thread thread = new Thread(worker, "DirectoryWalker-" + count.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+                }
+            }
+        }
+        return sharedExecutor;
+    }
+
+    /**
+     * @param executor the executor listing the directories, null to walk on the
+     *                 calling thread; defaults to {@link #sharedExecutor()}
+     * @return this walker
+     */
+    public DirectoryWalker setExecutor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * @param filter the entries to visit, null for all; the root is always visited
+     * @return this walker
+     */
+    public DirectoryWalker setFilter(FileFilter filter) {
+        this.filter = filter;
+        return this;
+    }
+
+    /**
+     * @param maxDepth the depth of the deepest directories to list, 0 lists only the root
+     *                 and visits its direct entries
+     * @return this walker
+     */
+    public DirectoryWalker setMaxDepth(int maxDepth) {
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("Max depth must not be negative, actual: " + maxDepth);
+        }
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    /**
+     * @param symlinkPolicy how symbolic links are handled, {@link SymlinkPolicy#NO_FOLLOW} by default
+     * @return this walker
+     */
+    public DirectoryWalker setSymlinkPolicy(SymlinkPolicy symlinkPolicy) {
+        if (symlinkPolicy == null) {
+            throw new IllegalArgumentException("SymlinkPolicy must not be null");
+        }
+        this.symlinkPolicy = symlinkPolicy;
+        return this;
+    }
+
+    /**
+     * @return true on a thread of {@link #sharedExecutor()} and while a walk task runs
+     */
+    static boolean isWorkerThread() {
+        return WORKER.get();
+    }
+
+    /**
+     * Walk the tree under <code>root and wait for the walk to complete.
+     * <p/>
+     * On a thread of {@link #sharedExecutor()} or in a walk task the tree is
+     * walked on the calling thread. Must not be called from a task of any
+     * other executor this walker uses.
+     *
+     * @param root    the file or directory to start from; nothing is visited if it does not exist
+     * @param visitor the visitor, null to only compute the totals
+     * @return the totals of the walk
+     * @throws IOException if the visitor fails, the walk is then stopped as soon as possible
+     */
+    public Result walk(File root, Visitor visitor) throws IOException {
+        Walk walk = new Walk(visitor, isWorkerThread() ? null : executor);
+        if (!root.exists() && !isSymlink(root)) {
+            return walk.result();
+        }
+        walk.pending.incrementAndGet();
+        walk.visit(root, null, 0);
+        walk.taskDone();
+        try {
+            walk.done.await();
+        } catch (InterruptedException e) {
+            walk.fail(new InterruptedIOException("Interrupted while walking " + root));
+            Thread.currentThread().interrupt();
+        }
+        Throwable failure = walk.failure.get();
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        return walk.result();
+    }
+
+    /**
+     * Tell whether <code>file is a symbolic link, or lies in a directory reached through one.
+     */
+    static boolean isSymlink(File file) {
+        return isSymlink(file, canonicalParentOf(file));
+    }
+
+    /**
+     * Tell whether <code>file is a symbolic link, given the canonical form of its
+     * directory, so that the entries of one directory canonicalize it only once.
+     *
+     * @param canonicalParent the canonical directory of <code>file, see {@link #canonicalParentOf(File)}
+     */
+    static boolean isSymlink(File file, File canonicalParent) {
+        if (canonicalParent == null) {
+            return false;
+        }
+        try {
+            File inCanonicalDir = new File(canonicalParent, file.getName());
+            return !inCanonicalDir.getCanonicalFile().equals(inCanonicalDir.getAbsoluteFile());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the canonical directory of <code>file, null if it has none or can not be resolved
+     */
+    static File canonicalParentOf(File file) {
+        File parent = file.getAbsoluteFile().getParentFile();
+        return parent == null ? null : canonicalOf(parent);
+    }
+
+    private static File canonicalOf(File dir) {
+        try {
+            return dir.getCanonicalFile();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A directory whose entries are being visited.
+     */
+    private static final class Node {
+        final File dir;
+        final Node parent;
+        final int depth;
+        /**
+         * The canonical form of <code>dir, resolved when it is listed
+         * if symbolic links are checked.
+         */
+        File canonicalDir;
+        /**
+         * The number of unfinished child directories, plus one while the directory is listed.
+         */
+        final AtomicInteger remaining = new AtomicInteger(1);
+
+        Node(File dir, Node parent, int depth) {
+            this.dir = dir;
+            this.parent = parent;
+            this.depth = depth;
+        }
+    }
+
+    /**
+     * The state of one {@link #walk(File, Visitor)} call.
+     */
+    private final class Walk {
+        final Visitor visitor;
+        /**
+         * The executor of this walk, null to walk on the calling thread.
+         */
+        final Executor taskExecutor;
+        final AtomicLong files = new AtomicLong();
+        final AtomicLong directories = new AtomicLong();
+        final AtomicLong bytes = new AtomicLong();
+        /**
+         * The number of submitted tasks not finished yet, plus one for the calling thread.
+         */
+        final AtomicInteger pending = new AtomicInteger();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        Walk(Visitor visitor, Executor taskExecutor) {
+            this.visitor = visitor;
+            this.taskExecutor = taskExecutor;
+        }
+
+        Result result() {
+            return new Result(files.get(), directories.get(), bytes.get());
+        }
+
+        void fail(Throwable t) {
+            failure.compareAndSet(null, t);
+        }
+
+        void taskDone() {
+            if (pending.decrementAndGet() == 0) {
+                done.countDown();
+            }
+        }
+
+        /**
+         * Visit an entry, entering it if it is a directory. Releases the hold
+         * the entry has on <code>parent once it is done with.
+         */
+        void visit(File file, Node parent, int depth) {
+            boolean entered = false;
+            try {
+                if (failure.get() != null) {
+                    return;
+                }
+                // the root is a link too when it is one, a linked root is not entered
+                if (symlinkPolicy != SymlinkPolicy.FOLLOW
+                        && (parent == null ? isSymlink(file) : isSymlink(file, parent.canonicalDir))) {
+                    if (symlinkPolicy == SymlinkPolicy.NO_FOLLOW) {
+                        files.incrementAndGet();
+                        if (visitor != null) {
+                            visitor.visitFile(file, 0, depth);
+                        }
+                    }
+                    return;
+                }
+                if (!file.isDirectory()) {
+                    long size = file.length();
+                    files.incrementAndGet();
+                    bytes.addAndGet(size);
+                    if (visitor != null) {
+                        visitor.visitFile(file, size, depth);
+                    }
+                    return;
+                }
+                directories.incrementAndGet();
+                if (visitor != null && !visitor.preVisitDirectory(file, depth)) {
+                    return;
+                }
+                // from here on the node releases the parent when it completes
+                entered = true;
+                Node node = new Node(file, parent, depth);
+                if (depth <= maxDepth) {
+                    list(node);
+                } else {
+                    complete(node);
+                }
+            } catch (Throwable t) {
+                fail(t);
+            } finally {
+                if (!entered) {
+                    try {
+                        complete(parent);
+                    } catch (Throwable t) {
+                        fail(t);
+                    }
+                }
+            }
+        }
+
+        /**
+         * List <code>node, visiting its files here and its directories in new tasks.
+         */
+        void list(Node node) throws IOException {
+            File[] children = filter == null ? node.dir.listFiles() : node.dir.listFiles(filter);
+            if (children != null && symlinkPolicy != SymlinkPolicy.FOLLOW) {
+                // shared by the checks of all children, set before any of them is submitted
+                node.canonicalDir = canonicalOf(node.dir.getAbsoluteFile());
+            }
+            if (children != null) {
+                for (File child : children) {
+                    if (failure.get() != null) {
+                        break;
+                    }
+                    node.remaining.incrementAndGet();
+                    if (child.isDirectory()) {
+                        submit(child, node);
+                    } else {
+                        visit(child, node, node.depth + 1);
+                    }
+                }
+            }
+            complete(node);
+        }
+
+        void submit(final File dir, final Node parent) {
+            final int depth = parent.depth + 1;
+            if (taskExecutor == null) {
+                visit(dir, parent, depth);
+                return;
+            }
+            pending.incrementAndGet();
+            try {
+                taskExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        Boolean outer = WORKER.get();
+                        WORKER.set(Boolean.TRUE);
+                        try {
+                            visit(dir, parent, depth);
+                        } finally {
+                            WORKER.set(outer);
+                            taskDone();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                pending.decrementAndGet();
+                visit(dir, parent, depth);
+            }
+        }
+
+        /**
+         * Release one hold on <code>node, finishing it and its ancestors
+         * whose last child it was.
+         */
+        void complete(Node node) throws IOException {
+            while (node != null && node.remaining.decrementAndGet() == 0) {
+                if (visitor != null && failure.get() == null) {
+                    visitor.postVisitDirectory(node.dir, node.depth);
+                }
+                node = node.parent;
+            }
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package cn.jony.libutil.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import okio.Buffer;
+
+/**
+ * Follows a growing UTF-8 file like <code>tail -f and hands out the lines
+ * appended to it.
+ * <p/>
+ * The follower keeps its position in the file and only reads what was added
+ * since the last poll. When the file gets shorter than that position, is
+ * deleted, or its first bytes no longer match the open file, it is considered
+ * truncated or rotated: the rest of the old file is read and the new file is
+ * followed from its beginning. The file is read one buffer at a time, so
+ * following a large file from its start does not load it into memory. While no data arrives the poll delay
+ * doubles from <code>minDelayMillis up to <code>maxDelayMillis and is
+ * reset as soon as a line is read.
+ * <p/>
+ * Only complete lines are returned, a line is complete once its <code>'\n'
+ * has been written; a <code>'\r' before the <code>'\n' is dropped.
+ * <p/>
+ * The lines can be consumed through the {@link Iterator} contract, where
+ * {@link #hasNext()} blocks until a line is available or the follower is closed:
+ * <pre>
+ * FileFollower follower = new FileFollower(logFile, true);
+ * while (follower.hasNext()) {
+ *     String line = follower.nextLine();
+ *     // do something with line
+ * }
+ * </pre>
+ * or through {@link #follow(LineListener)}. {@link #close()} may be called from
+ * any thread to stop following.
+ *
+ * @author jony
+ * @see LineIterator
+ */
+@SuppressWarnings("unused")
+public class FileFollower implements Iterator<String>, Closeable {
+    /**
+     * The default initial delay between two polls of an idle file.
+     */
+    public static final long DEFAULT_MIN_DELAY_MILLIS = 100;
+    /**
+     * The default maximum delay between two polls of an idle file.
+     */
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 2000;
+    /**
+     * The number of leading bytes compared to tell a replaced file from the open one.
+     */
+    private static final int HEAD_SIZE = 256;
+
+    /**
+     * Receives the lines of {@link #follow(LineListener)}.
+     */
+    public interface LineListener {
+        /**
+         * @param line a complete line, without its terminator
+         */
+        void onLine(String line);
+    }
+
+    private final File file;
+    private final long minDelayMillis;
+    private final long maxDelayMillis;
+    private final Buffer pending = new Buffer();
+    private final Object lock = new Object();
+
+    private final byte[] head = new byte[HEAD_SIZE];
+
+    private RandomAccessFile input;
+    private long position;
+    private int headLength;
+    private long checkedModified;
+    private boolean fromEnd;
+    private long delayMillis;
+    private String cachedLine;
+    private volatile boolean closed;
+
+    /**
+     * Construct a follower with the default poll delays.
+     *
+     * @param file    the file to follow, it does not need to exist yet
+     * @param fromEnd true to skip the current content of the file, false to read it first
+     */
+    public FileFollower(File file, boolean fromEnd) {
+        this(file, fromEnd, DEFAULT_MIN_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS);
+    }
+
+    /**
+     * @param file           the file to follow, it does not need to exist yet
+     * @param fromEnd        true to skip the current content of the file, false to read it first
+     * @param minDelayMillis the delay before the first poll of an idle file
+     * @param maxDelayMillis the maximum delay between two polls of an idle file
+     */
+    public FileFollower(File file, boolean fromEnd, long minDelayMillis, long maxDelayMillis) {
+        if (file == null) {
+            throw new IllegalArgumentException("File must not be null");
+        }
+        if (minDelayMillis <= 0 || maxDelayMillis < minDelayMillis) {
+            throw new IllegalArgumentException("Invalid delays: " + minDelayMillis + ", " + maxDelayMillis);
+        }
+        this.file = file;
+        this.fromEnd = fromEnd;
+        this.minDelayMillis = minDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.delayMillis = minDelayMillis;
+    }
+
+    /**
+     * Wait for the next line.
+     *
+     * @return true once a line is available, false if the follower was closed
+     * or the waiting thread interrupted
+     * @throws IllegalStateException if the file can not be read
+     */
+    @Override
+    public boolean hasNext() {
+        if (cachedLine != null) {
+            return true;
+        }
+        try {
+            while (!closed) {
+                String line = poll();
+                if (line != null) {
+                    if (isValidLine(line)) {
+                        cachedLine = line;
+                        return true;
+                    }
+                    continue;
+                }
+                synchronized (lock) {
+                    if (!closed) {
+                        lock.wait(delayMillis);
+                    }
+                }
+                delayMillis = Math.min(maxDelayMillis, delayMillis * 2);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            close();
+            IOUtils.closeQuietly(input);
+            throw new IllegalStateException(e);
+        }
+        IOUtils.closeQuietly(input);
+        return false;
+    }
+
+    /**
+     * Overridable method to validate each line that is returned.
+     *
+     * @param line the line that is to be validated
+     * @return true if valid, false to skip the line
+     */
+    protected boolean isValidLine(String line) {
+        return true;
+    }
+
+    @Override
+    public String next() {
+        return nextLine();
+    }
+
+    /**
+     * Return the next line, waiting for it if necessary.
+     *
+     * @return the next line
+     * @throws NoSuchElementException if the follower was closed
+     */
+    public String nextLine() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more lines");
+        }
+        String line = cachedLine;
+        cachedLine = null;
+        return line;
+    }
+
+    /**
+     * Hand every line to <code>listener until the follower is closed or the
+     * calling thread interrupted.
+     *
+     * @param listener the listener, called on the calling thread
+     */
+    public void follow(LineListener listener) {
+        while (hasNext()) {
+            listener.onLine(nextLine());
+        }
+    }
+
+    /**
+     * @return the offset in the current file up to which the content has been read
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Stop following the file. A thread waiting in {@link #hasNext()} returns
+     * false and releases the file.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Remove unsupported on FileFollower");
+    }
+
+    /**
+     * @return the next complete line, or null if there is none yet
+     */
+    private String poll() throws IOException {
+        String line = pendingLine();
+        if (line != null) {
+            return line;
+        }
+        if (input == null && !open()) {
+            return null;
+        }
+        if (read() > 0 && (line = pendingLine()) != null) {
+            return line;
+        }
+
+        // at the end of the open file, which may no longer be the followed one
+        if (isRotated()) {
+            if (pending.size() > 0) {
+                // the old file ended without a terminator, don't glue its tail to the new file
+                pending.writeByte('\n');
+            }
+            IOUtils.closeQuietly(input);
+            input = null;
+            position = 0;
+            return pendingLine();
+        }
+        return null;
+    }
+
+    private boolean open() throws IOException {
+        if (!file.exists()) {
+            return false;
+        }
+        input = new RandomAccessFile(file, "r");
+        if (fromEnd) {
+            position = input.length();
+            fromEnd = false;
+        }
+        headLength = 0;
+        checkedModified = file.lastModified();
+        input.seek(position);
+        return true;
+    }
+
+    /**
+     * Tell whether the file was truncated, or replaced by another one since it was opened.
+     * Only called once the open file has been read to its end.
+     */
+    private boolean isRotated() throws IOException {
+        if (!file.exists()) {
+            return true;
+        }
+        // measured in this order, the open file can not be shorter than the path if they are the same
+        long length = file.length();
+        if (length < position || input.length() < length) {
+            return true;
+        }
+        long modified = file.lastModified();
+        if (modified == checkedModified) {
+            return false;
+        }
+        checkedModified = modified;
+        // a replacement at least as long as the position: compare the first bytes
+        if (headLength < HEAD_SIZE) {
+            headLength = readHead(input, head);
+            input.seek(position);
+        }
+        RandomAccessFile other = new RandomAccessFile(file, "r");
+        try {
+            byte[] otherHead = new byte[HEAD_SIZE];
+            int otherLength = readHead(other, otherHead);
+            int n = Math.min(headLength, otherLength);
+            for (int i = 0; i < n; i++) {
+                if (head[i] != otherHead[i]) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            IOUtils.closeQuietly(other);
+        }
+    }
+
+    private static int readHead(RandomAccessFile raf, byte[] head) throws IOException {
+        raf.seek(0);
+        int total = 0;
+        int n;
+        while (total < head.length && (n = raf.read(head, total, head.length - total)) > 0) {
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * Read one buffer at a time until a line is complete or the end of the
+     * file is reached, so a large backlog is never held in memory at once.
+     *
+     * @return the number of bytes read
+     */
+    private long read() throws IOException {
+        long total = 0;
+        byte[] buffer = BufferPool.takeBytes();
+        try {
+            int n;
+            while ((n = input.read(buffer)) > 0) {
+                pending.write(buffer, 0, n);
+                position += n;
+                total += n;
+                if (indexOf(buffer, n, (byte) '\n') != -1) {
+                    break;
+                }
+            }
+        } finally {
+            BufferPool.recycle(buffer);
+        }
+        return total;
+    }
+
+    private static int indexOf(byte[] buffer, int length, byte b) {
+        for (int i = 0; i < length; i++) {
+            if (buffer[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private String pendingLine() throws IOException {
+        long index = pending.indexOf((byte) '\n');
+        if (index == -1) {
+            return null;
+        }
+        long end = index > 0 && pending.getByte(index - 1) == '\r' ? index - 1 : index;
+        String line = pending.readUtf8(end);
+        pending.skip(index - end + 1);
+        delayMillis = minDelayMillis;
+        return line;
+    }
+}
@@ -0,0 +1,289 @@
+package cn.jony.libutil.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hashes files, byte arrays and streams with any {@link MultiDigest}
+ * algorithms in a single pass.
+ * <p/>
+ * Every thread keeps its {@link MultiDigest} instances, one per combination
+ * of algorithms, and a read buffer of {@link #BUFFER_SIZE} bytes, so hashing
+ * many files allocates neither digests nor buffers. Many files can be hashed
+ * in parallel with {@link #hashAll(Collection, Executor, int, String...)},
+ * which bounds the number of files read at the same time:
+ * <pre>
+ * Map&lt;File, MultiDigest.Result&gt; results = FileHasher.hashAll(files,
+ *         DirectoryWalker.sharedExecutor(), 4, MultiDigest.MD5, MultiDigest.SHA_256);
+ * </pre>
+ *
+ * @author jony
+ * @see MultiDigest
+ */
+@SuppressWarnings("unused")
+public final class FileHasher {
+    /**
+     * The size of the per-thread read buffer.
+     */
+    public static final int BUFFER_SIZE = 256 * 1024;
+
+    private static final ThreadLocal<State> STATE = new ThreadLocal<State>() {
+        @Override
+        protected State initialValue() {
+            return new State();
+        }
+    };
+
+    private FileHasher() {
+        throw new AssertionError("No instances");
+    }
+
+    /**
+     * @param file       the file to hash
+     * @param algorithms the algorithms to compute, see {@link MultiDigest}
+     * @return the hashes of the content of <code>file
+     * @throws IOException if the file can not be read
+     */
+    public static MultiDigest.Result hash(File file, String... algorithms) throws IOException {
+        InputStream input = new FileInputStream(file);
+        try {
+            return hash(input, algorithms);
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    /**
+     * Hash the remaining content of <code>input, leaving it open.
+     *
+     * @param input      the stream to hash
+     * @param algorithms the algorithms to compute, see {@link MultiDigest}
+     * @return the hashes of the bytes read
+     * @throws IOException if the stream can not be read
+     */
+    public static MultiDigest.Result hash(InputStream input, String... algorithms) throws IOException {
+        State state = STATE.get();
+        MultiDigest digest = state.digest(algorithms);
+        byte[] buffer = state.buffer();
+        int n;
+        while ((n = input.read(buffer)) != -1) {
+            digest.update(buffer, 0, n);
+        }
+        return digest.finish();
+    }
+
+    /**
+     * @param data       the bytes to hash
+     * @param algorithms the algorithms to compute, see {@link MultiDigest}
+     * @return the hashes of <code>data
+     */
+    public static MultiDigest.Result hash(byte[] data, String... algorithms) {
+        MultiDigest digest = STATE.get().digest(algorithms);
+        digest.update(data, 0, data.length);
+        return digest.finish();
+    }
+
+    /**
+     * Hash many files, reading at most <code>concurrency of them at the same time.
+     *
+     * @param files       the files to hash
+     * @param executor    the executor running the reads, null to hash on the calling thread
+     * @param concurrency the maximum number of files read at the same time
+     * @param algorithms  the algorithms to compute, see {@link MultiDigest}
+     * @return the results in the iteration order of <code>files, mapped to
+     * null for the files that could not be read
+     * @throws InterruptedIOException if the calling thread is interrupted while waiting
+     */
+    public static Map<File, MultiDigest.Result> hashAll(Collection<File> files, Executor executor, int concurrency,
+                                                        final String... algorithms)
+            throws InterruptedIOException {
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("Concurrency must be positive, actual: " + concurrency);
+        }
+        // fail fast on unsupported algorithms, rather than once per file
+        STATE.get().digest(algorithms);
+
+        final File[] array = files.toArray(new File[files.size()]);
+        final MultiDigest.Result[] results = new MultiDigest.Result[array.length];
+        try {
+            forEach(array.length, executor, concurrency, new IndexedTask() {
+                @Override
+                public void run(int index) {
+                    try {
+                        results[index] = hash(array[index], algorithms);
+                    } catch (IOException e) {
+                        results[index] = null;
+                    }
+                }
+            });
+        } catch (InterruptedIOException e) {
+            throw e;
+        } catch (IOException e) {
+            // the task maps read failures to null, only waiting can fail
+            throw new AssertionError(e);
+        }
+
+        Map<File, MultiDigest.Result> map = new LinkedHashMap<>();
+        for (int i = 0; i < array.length; i++) {
+            map.put(array[i], results[i]);
+        }
+        return map;
+    }
+
+    /**
+     * A task run once per index by {@link #forEach(int, Executor, int, IndexedTask)}.
+     */
+    interface IndexedTask {
+        void run(int index) throws IOException;
+    }
+
+    /**
+     * Run <code>task for every index in <code>[0, count), on at most
+     * <code>concurrency threads at the same time, the calling thread being one of them.
+     * <p/>
+     * The calling thread only waits for the workers that took indices before it
+     * ran out of them; a worker still queued on <code>executor then has nothing
+     * left to do and returns at once. Calling <code>forEach from the threads of
+     * the executor it uses therefore does not deadlock the pool.
+     *
+     * @throws IOException the first exception thrown by the task, the
+     *                     remaining indices are then skipped
+     */
+    static void forEach(int count, Executor executor, int concurrency, IndexedTask task) throws IOException {
+        Batch batch = new Batch(count, task);
+        int workers = executor == null ? 0 : Math.max(0, Math.min(concurrency, count) - 1);
+        for (int w = 0; w < workers; w++) {
+            try {
+                executor.execute(batch);
+            } catch (RejectedExecutionException e) {
+                break;
+            }
+        }
+        batch.work();
+        try {
+            batch.close();
+        } catch (InterruptedException e) {
+            // stop handing out indices to the running workers
+            batch.next.set(count);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for workers");
+        }
+        if (batch.failure.get() != null) {
+            throw batch.failure.get();
+        }
+    }
+
+    /**
+     * The indices of one {@link #forEach(int, Executor, int, IndexedTask)} call,
+     * run by the caller and by the workers that start before it is closed.
+     */
+    private static final class Batch implements Runnable {
+        final int count;
+        final IndexedTask task;
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicReference<IOException> failure = new AtomicReference<>();
+        private int running;
+        private boolean closed;
+
+        Batch(int count, IndexedTask task) {
+            this.count = count;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                running++;
+            }
+            try {
+                work();
+            } finally {
+                synchronized (this) {
+                    if (--running == 0) {
+                        notifyAll();
+                    }
+                }
+            }
+        }
+
+        void work() {
+            int i;
+            while ((i = next.getAndIncrement()) < count) {
+                try {
+                    task.run(i);
+                } catch (IOException e) {
+                    failure.compareAndSet(null, e);
+                    next.set(count);
+                }
+            }
+        }
+
+        /**
+         * Turn away the workers that did not start yet and wait for the others.
+         */
+        synchronized void close() throws InterruptedException {
+            closed = true;
+            while (running > 0) {
+                wait();
+            }
+        }
+    }
+
+    /**
+     * @return the reusable digest of the calling thread for <code>algorithms,
+     * cleared of what an unfinished hash left in it
+     */
+    static MultiDigest threadDigest(String... algorithms) {
+        return STATE.get().digest(algorithms);
+    }
+
+    /**
+     * @return the reusable {@link #BUFFER_SIZE} bytes buffer of the calling thread
+     */
+    static byte[] threadBuffer() {
+        return STATE.get().buffer();
+    }
+
+    /**
+     * The reusable objects of one thread.
+     */
+    private static final class State {
+        final Map<String, MultiDigest> digests = new HashMap<>();
+        byte[] buffer;
+
+        MultiDigest digest(String[] algorithms) {
+            String key = Arrays.toString(algorithms);
+            MultiDigest digest = digests.get(key);
+            if (digest == null) {
+                digest = new MultiDigest(algorithms);
+                digests.put(key, digest);
+            } else if (digest.getByteCount() != 0) {
+                // left over by a hash that failed before finishing
+                digest.finish();
+            }
+            return digest;
+        }
+
+        byte[] buffer() {
+            if (buffer == null) {
+                buffer = new byte[BUFFER_SIZE];
+            }
+            return buffer;
+        }
+    }
+}
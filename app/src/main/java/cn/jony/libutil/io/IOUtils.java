@@ -22,6 +22,12 @@ import okio.*;
 
 import java.io.*;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ScatteringByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -51,8 +57,8 @@ import static cn.jony.libutil.Constants.UTF_8;
  * <p/>
  * All the methods in this class that read a stream are buffered internally.
  * This means that there is no cause to use a <code>BufferedInputStream
- * or <code>BufferedReader. The default buffer size of 4K has been shown
- * to be efficient in tests.
+ * or <code>BufferedReader. The buffers are taken from {@link BufferPool}
+ * and returned to it once the call completes.
  * <p/>
  * Wherever possible, the methods in this class do <em>not flush or close
  * the stream. This is to avoid making non-portable assumptions about the
@@ -104,6 +110,10 @@ public class IOUtils {
      * The system line separator string.
      */
     public static final String LINE_SEPARATOR;
+    /**
+     * The largest array some VMs can allocate, the limit of {@link #toByteArray(InputStream)}.
+     */
+    public static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
 
     static {
         // avoid security issues
@@ -115,19 +125,16 @@ public class IOUtils {
     }
 
     /**
-     * The default buffer size to use for
-     * {@link #copyLarge(InputStream, OutputStream)}
+     * The maximum number of bytes handed to a single
+     * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+     * call by {@link #copyLarge(FileChannel, FileChannel)}.
      */
-    private static final int DEFAULT_BUFFER_SIZE = 1024 * 4;
-
+    private static final long CHANNEL_TRANSFER_SIZE = 1024 * 1024 * 8;
     /**
-     * The default buffer size to use for the skip() methods.
+     * The size of the direct buffer used by channel copies that can not use
+     * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}.
      */
-    private static final int SKIP_BUFFER_SIZE = 2048;
-
-    // Allocated in the skip method if necessary.
-    private static char[] SKIP_CHAR_BUFFER;
-    private static byte[] SKIP_BYTE_BUFFER;
+    private static final int DIRECT_BUFFER_SIZE = 64 * 1024;
 
     /**
      * Instances should NOT be constructed in standard programming.
@@ -330,10 +337,99 @@ public class IOUtils {
      * @param input the <code>InputStream to read from
      * @return the requested byte array
      * @throws NullPointerException if the input is null
-     * @throws IOException          if an I/O error occurs
+     * @throws IOException          if an I/O error occurs or the content does not fit in an array
+     * @see #toByteArray(InputStream, long)
      */
     public static byte[] toByteArray(InputStream input) throws IOException {
-        return Okio.buffer(Okio.source(input)).readByteArray();
+        return toByteArray(input, MAX_ARRAY_SIZE);
+    }
+
+    /**
+     * Get the contents of an <code>InputStream as a byte[], failing as
+     * soon as it is known to be larger than <code>maxSize.
+     * <p/>
+     * When the remaining length is known, from the channel of a
+     * <code>FileInputStream or as estimated by {@link InputStream#available()},
+     * the array is allocated at that size up front and filled in place; a stream
+     * longer than announced falls back to growing a buffer.
+     *
+     * @param input   the <code>InputStream to read from
+     * @param maxSize the maximum number of bytes to read
+     * @return the requested byte array
+     * @throws NullPointerException if the input is null
+     * @throws IOException          if an I/O error occurs or the content is larger than <code>maxSize
+     */
+    public static byte[] toByteArray(InputStream input, long maxSize) throws IOException {
+        if (maxSize < 0 || maxSize > MAX_ARRAY_SIZE) {
+            throw new IllegalArgumentException("Max size must be in [0, " + MAX_ARRAY_SIZE + "], actual: " + maxSize);
+        }
+        long expected = remainingLength(input);
+        if (expected > maxSize) {
+            throw new IOException("Stream size " + expected + " exceeds limit " + maxSize);
+        }
+        long hint = expected >= 0 ? expected : Math.min(input.available(), maxSize);
+        if (hint <= 0) {
+            return readBounded(input, new Buffer(), maxSize).readByteArray();
+        }
+
+        byte[] data = new byte[(int) hint];
+        int offset = 0;
+        int n;
+        while (offset < data.length && (n = input.read(data, offset, data.length - offset)) != -1) {
+            offset += n;
+        }
+        if (offset < data.length) {
+            byte[] shorter = new byte[offset];
+            System.arraycopy(data, 0, shorter, 0, offset);
+            return shorter;
+        }
+        int next = input.read();
+        if (next == -1) {
+            return data;
+        }
+        if (data.length == maxSize) {
+            throw new IOException("Stream size exceeds limit " + maxSize);
+        }
+        Buffer output = new Buffer();
+        output.write(data);
+        output.writeByte(next);
+        return readBounded(input, output, maxSize).readByteArray();
+    }
+
+    /**
+     * @return the number of bytes left in <code>input if it can be known
+     * without reading, or -1
+     */
+    private static long remainingLength(InputStream input) {
+        if (input instanceof FileInputStream) {
+            try {
+                FileChannel channel = ((FileInputStream) input).getChannel();
+                return Math.max(0, channel.size() - channel.position());
+            } catch (IOException e) {
+                // not a regular file, fall through
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Append the rest of <code>input to <code>output, failing once it
+     * holds more than <code>maxSize bytes.
+     */
+    private static Buffer readBounded(InputStream input, Buffer output, long maxSize) throws IOException {
+        byte[] buffer = BufferPool.takeBytes();
+        try {
+            int n;
+            while ((n = input.read(buffer)) != -1) {
+                if (output.size() + n > maxSize) {
+                    throw new IOException("Stream size exceeds limit " + maxSize);
+                }
+                output.write(buffer, 0, n);
+            }
+            return output;
+        } finally {
+            BufferPool.recycle(buffer);
+        }
     }
 
     // read char[]
@@ -374,7 +470,8 @@ public class IOUtils {
      * @since Commons IO 1.1
      */
     public static char[] toCharArray(InputStream is, String encoding) throws IOException {
-        return Okio.buffer(Okio.source(is)).readString(Charset.forName(encoding)).toCharArray();
+        byte[] bytes = toByteArray(is);
+        return Charsets.toCharArray(bytes, 0, bytes.length, Charsets.forName(encoding));
     }
 
     // read toString
@@ -391,7 +488,7 @@ public class IOUtils {
      * @throws IOException          if an I/O error occurs
      */
     public static String toString(InputStream input) throws IOException {
-        return Okio.buffer(Okio.source(input)).readUtf8();
+        return toString(input, UTF_8);
     }
 
     /**
@@ -409,7 +506,7 @@ public class IOUtils {
      * @throws IOException          if an I/O error occurs
      */
     public static String toString(InputStream input, String encoding) throws IOException {
-        return Okio.buffer(Okio.source(input)).readString(Charset.forName(encoding));
+        return new String(toByteArray(input), Charsets.forName(encoding));
     }
 
     // readLines
@@ -429,8 +526,7 @@ public class IOUtils {
      * @since Commons IO 1.1
      */
     public static List<String> readLines(InputStream input) throws IOException {
-        InputStreamReader reader = new InputStreamReader(input);
-        return readLines(reader);
+        return readLines(input, null);
     }
 
     /**
@@ -441,7 +537,8 @@ public class IOUtils {
      * <a href="http://www.iana.org/assignments/character-sets">IANA.
      * <p/>
      * This method buffers the input internally, so there is no need to use a
-     * <code>BufferedInputStream.
+     * <code>BufferedInputStream. UTF-8 input is split into lines at the
+     * byte level by {@link Utf8LineReader}.
      *
      * @param input    the <code>InputStream to read from, not null
      * @param encoding the encoding to use, null means platform default
@@ -451,11 +548,19 @@ public class IOUtils {
      * @since Commons IO 1.1
      */
     public static List<String> readLines(InputStream input, String encoding) throws IOException {
-        if (encoding == null) {
-            return readLines(input);
+        if (isUtf8(encoding)) {
+            Utf8LineReader reader = new Utf8LineReader(input);
+            List<String> list = new ArrayList<>();
+            String line = reader.readLine();
+            while (line != null) {
+                list.add(line);
+                line = reader.readLine();
+            }
+            return list;
+        } else if (encoding == null) {
+            return readLines(new InputStreamReader(input));
         } else {
-            InputStreamReader reader = new InputStreamReader(input, encoding);
-            return readLines(reader);
+            return readLines(new InputStreamReader(input, encoding));
         }
     }
 
@@ -520,6 +625,7 @@ public class IOUtils {
     /**
      * Return an Iterator for the lines in an <code>InputStream, using
      * the character encoding specified (or default encoding if null).
+     * UTF-8 input is split into lines at the byte level by {@link Utf8LineReader}.
      * <p/>
      * <code>LineIterator holds a reference to the open
      * <code>InputStream specified here. When you have finished with
@@ -548,6 +654,12 @@ public class IOUtils {
      * @since Commons IO 1.2
      */
     public static LineIterator lineIterator(InputStream input, String encoding) throws IOException {
+        if (input == null) {
+            throw new IllegalArgumentException("InputStream must not be null");
+        }
+        if (isUtf8(encoding)) {
+            return new LineIterator(new Utf8LineReader(input));
+        }
         Reader reader;
         if (encoding == null) {
             reader = new InputStreamReader(input);
@@ -557,6 +669,22 @@ public class IOUtils {
         return new LineIterator(reader);
     }
 
+    /**
+     * @param encoding the encoding name, null means platform default
+     * @return true if the encoding resolves to UTF-8, in which case lines can be
+     * split at the byte level by {@link Utf8LineReader}; false for an unknown
+     * or illegal name, left to the reader to reject with an
+     * <code>UnsupportedEncodingException
+     */
+    private static boolean isUtf8(String encoding) {
+        try {
+            return UTF_8.equals(Charsets.forName(encoding).name());
+        } catch (IllegalArgumentException e) {
+            // IllegalCharsetNameException or UnsupportedCharsetException
+            return false;
+        }
+    }
+
     /**
      * convert inputStream to a bufferedSource
      *
@@ -691,37 +819,131 @@ public class IOUtils {
         }
     }
 
-    // writeLines
+    // gathering / scattering channel I/O
     // -----------------------------------------------------------------------
 
+    /**
+     * Write the remaining bytes of all <code>buffers to a channel, with as
+     * few {@link GatheringByteChannel#write(ByteBuffer[], int, int)} calls as
+     * the channel allows.
+     *
+     * @param buffers the buffers to write, their positions are advanced
+     * @param channel the blocking channel to write to
+     * @return the number of bytes written
+     * @throws NullPointerException if an argument is null
+     * @throws IOException          if an I/O error occurs
+     * @see RecordBatchWriter
+     */
+    public static long write(ByteBuffer[] buffers, GatheringByteChannel channel) throws IOException {
+        return write(buffers, 0, buffers.length, channel);
+    }
+
+    /**
+     * Write the remaining bytes of <code>buffers[offset, offset + length) to a channel.
+     *
+     * @param buffers the buffers to write, their positions are advanced
+     * @param offset  the index of the first buffer to write
+     * @param length  the number of buffers to write
+     * @param channel the blocking channel to write to
+     * @return the number of bytes written
+     * @throws NullPointerException if an argument is null
+     * @throws IOException          if an I/O error occurs
+     * @see #write(ByteBuffer[], GatheringByteChannel)
+     */
+    public static long write(ByteBuffer[] buffers, int offset, int length, GatheringByteChannel channel)
+            throws IOException {
+        long total = 0;
+        int end = offset + length;
+        while (true) {
+            // skip the buffers written completely by the previous call
+            while (offset < end && !buffers[offset].hasRemaining()) {
+                offset++;
+            }
+            if (offset == end) {
+                return total;
+            }
+            total += channel.write(buffers, offset, end - offset);
+        }
+    }
+
+    /**
+     * Fill <code>buffers from a channel with as few
+     * {@link ScatteringByteChannel#read(ByteBuffer[], int, int)} calls as the
+     * channel allows, stopping early only at the end of the input.
+     *
+     * @param channel the blocking channel to read from
+     * @param buffers the buffers to fill, their positions are advanced
+     * @return the number of bytes read, less than the space of the buffers only at the end of the input
+     * @throws NullPointerException if an argument is null
+     * @throws IOException          if an I/O error occurs
+     */
+    public static long read(ScatteringByteChannel channel, ByteBuffer... buffers) throws IOException {
+        long total = 0;
+        int offset = 0;
+        while (true) {
+            while (offset < buffers.length && !buffers[offset].hasRemaining()) {
+                offset++;
+            }
+            if (offset == buffers.length) {
+                return total;
+            }
+            long n = channel.read(buffers, offset, buffers.length - offset);
+            if (n < 0) {
+                return total;
+            }
+            total += n;
+        }
+    }
+
     /**
      * Writes the <code>toString() value of each item in a collection to
-     * an <code>OutputStream line by line, using the default character
-     * encoding of the platform and the specified line ending.
+     * a channel line by line, batching the lines into gathering writes.
      *
      * @param lines      the lines to write, null entries produce blank lines
      * @param lineEnding the line separator to use, null is system default
-     * @param output     the <code>OutputStream to write to, not null, not closed
-     * @throws NullPointerException if the output is null
+     * @param channel    the blocking channel to write to, not closed
+     * @param charset    the charset to use, null means platform default
+     * @return the number of bytes written
+     * @throws NullPointerException if the channel is null
      * @throws IOException          if an I/O error occurs
-     * @since Commons IO 1.1
      */
-    public static void writeLines(Collection<?> lines, String lineEnding, OutputStream output) throws IOException {
+    public static long writeLines(Collection<?> lines, String lineEnding, GatheringByteChannel channel,
+                                  Charset charset) throws IOException {
         if (lines == null) {
-            return;
+            return 0;
         }
-        if (lineEnding == null) {
-            lineEnding = LINE_SEPARATOR;
+        if (charset == null) {
+            charset = Charset.defaultCharset();
         }
-
-        BufferedSink sink = toSink(output);
-
+        byte[] ending = (lineEnding == null ? LINE_SEPARATOR : lineEnding).getBytes(charset);
+        RecordBatchWriter writer = new RecordBatchWriter(channel);
         for (Object line : lines) {
             if (line != null) {
-                sink.write(line.toString().getBytes());
+                writer.add(line.toString().getBytes(charset));
             }
-            sink.write(lineEnding.getBytes());
+            writer.add(ending);
         }
+        writer.flush();
+        return writer.getBytesWritten();
+    }
+
+    // writeLines
+    // -----------------------------------------------------------------------
+
+    /**
+     * Writes the <code>toString() value of each item in a collection to
+     * an <code>OutputStream line by line, using the default character
+     * encoding of the platform and the specified line ending.
+     *
+     * @param lines      the lines to write, null entries produce blank lines
+     * @param lineEnding the line separator to use, null is system default
+     * @param output     the <code>OutputStream to write to, not null, not closed
+     * @throws NullPointerException if the output is null
+     * @throws IOException          if an I/O error occurs
+     * @since Commons IO 1.1
+     */
+    public static void writeLines(Collection<?> lines, String lineEnding, OutputStream output) throws IOException {
+        writeLines(lines, lineEnding, output, (Charset) null);
     }
 
     /**
@@ -736,30 +958,49 @@ public class IOUtils {
      * @param lineEnding the line separator to use, null is system default
      * @param output     the <code>OutputStream to write to, not null, not closed
      * @param encoding   the encoding to use, null means platform default
-     * @throws NullPointerException if the output is null
-     * @throws IOException          if an I/O error occurs
+     * @throws NullPointerException         if the output is null
+     * @throws UnsupportedEncodingException if the encoding is not supported
+     * @throws IOException                  if an I/O error occurs
      * @since Commons IO 1.1
      */
     public static void writeLines(Collection<?> lines, String lineEnding, OutputStream output, String encoding)
             throws IOException {
-        if (encoding == null) {
-            writeLines(lines, lineEnding, output);
-        } else {
-            if (lines == null) {
-                return;
-            }
-            if (lineEnding == null) {
-                lineEnding = LINE_SEPARATOR;
-            }
-
-            BufferedSink sink = toSink(output);
+        Charset charset;
+        try {
+            charset = Charsets.forName(encoding);
+        } catch (IllegalArgumentException e) {
+            // IllegalCharsetNameException or UnsupportedCharsetException
+            throw new UnsupportedEncodingException(encoding);
+        }
+        writeLines(lines, lineEnding, output, charset);
+    }
 
-            for (Object line : lines) {
-                if (line != null) {
-                    sink.write(line.toString().getBytes(encoding));
-                }
-                sink.write(lineEnding.getBytes(encoding));
-            }
+    /**
+     * Writes the <code>toString() value of each item in a collection to
+     * an <code>OutputStream line by line through a {@link LineWriter}, which
+     * is flushed but not closed.
+     *
+     * @param lines      the lines to write, null entries produce blank lines
+     * @param lineEnding the line separator to use, null is system default
+     * @param output     the <code>OutputStream to write to, not null, not closed
+     * @param charset    the charset to use, null means platform default
+     * @throws NullPointerException if the output is null
+     * @throws IOException          if an I/O error occurs
+     */
+    public static void writeLines(Collection<?> lines, String lineEnding, OutputStream output, Charset charset)
+            throws IOException {
+        if (lines == null) {
+            return;
+        }
+        if (output == null) {
+            throw new NullPointerException("OutputStream must not be null");
+        }
+        LineWriter writer = new LineWriter(output, charset, lineEnding);
+        try {
+            writer.writeLines(lines);
+            writer.flush();
+        } finally {
+            writer.release();
         }
     }
 
@@ -800,6 +1041,10 @@ public class IOUtils {
      * <p/>
      * This method buffers the input internally, so there is no need to use a
      * <code>BufferedInputStream.
+     * <p/>
+     * When <code>input is a <code>FileInputStream and <code>output
+     * is a <code>FileOutputStream the bytes are copied through their channels,
+     * see {@link #copyLarge(FileChannel, FileChannel)}.
      *
      * @param input  the <code>InputStream to read from
      * @param output the <code>OutputStream to write to
@@ -809,9 +1054,210 @@ public class IOUtils {
      * @since Commons IO 1.3
      */
     public static long copyLarge(InputStream input, OutputStream output) throws IOException {
-        BufferedSink sink = toSink(output);
-        BufferedSource source = toSource(input);
-        return source.readAll(sink);
+        if (input instanceof FileInputStream && output instanceof FileOutputStream) {
+            return copyLarge(((FileInputStream) input).getChannel(), ((FileOutputStream) output).getChannel());
+        }
+        byte[] buffer = BufferPool.takeBytes();
+        try {
+            return copyLarge(input, output, buffer);
+        } finally {
+            BufferPool.recycle(buffer);
+        }
+    }
+
+    /**
+     * Copy bytes from a large (over 2GB) <code>InputStream to an
+     * <code>OutputStream using the given buffer.
+     * <p/>
+     * This method uses the provided buffer, so there is no need to use a
+     * <code>BufferedInputStream.
+     *
+     * @param input  the <code>InputStream to read from
+     * @param output the <code>OutputStream to write to
+     * @param buffer the buffer to use for the copy
+     * @return the number of bytes copied
+     * @throws NullPointerException if the input or output is null
+     * @throws IOException          if an I/O error occurs
+     * @since Commons IO 2.2
+     */
+    public static long copyLarge(InputStream input, OutputStream output, byte[] buffer) throws IOException {
+        long count = 0;
+        int n;
+        while (-1 != (n = input.read(buffer))) {
+            output.write(buffer, 0, n);
+            count += n;
+        }
+        return count;
+    }
+
+    /**
+     * Copy bytes from an <code>InputStream to an <code>OutputStream
+     * at no more than the rate allowed by <code>limiter.
+     *
+     * @param input   the <code>InputStream to read from
+     * @param output  the <code>OutputStream to write to
+     * @param limiter the limiter pacing the copy, null for no limit
+     * @return the number of bytes copied, or -1 if &gt; Integer.MAX_VALUE
+     * @throws NullPointerException   if the input or output is null
+     * @throws InterruptedIOException if the thread is interrupted while throttled
+     * @throws IOException            if an I/O error occurs
+     */
+    public static int copy(InputStream input, OutputStream output, RateLimiter limiter) throws IOException {
+        long count = copyLarge(input, output, limiter);
+        if (count > Integer.MAX_VALUE) {
+            return -1;
+        }
+        return (int) count;
+    }
+
+    /**
+     * Copy bytes from a large (over 2GB) <code>InputStream to an
+     * <code>OutputStream at no more than the rate allowed by <code>limiter.
+     * <p/>
+     * The limiter may be shared with other copies, they then split its rate.
+     *
+     * @param input   the <code>InputStream to read from
+     * @param output  the <code>OutputStream to write to
+     * @param limiter the limiter pacing the copy, null for no limit
+     * @return the number of bytes copied
+     * @throws NullPointerException   if the input or output is null
+     * @throws InterruptedIOException if the thread is interrupted while throttled
+     * @throws IOException            if an I/O error occurs
+     */
+    public static long copyLarge(InputStream input, OutputStream output, RateLimiter limiter) throws IOException {
+        if (limiter == null) {
+            return copyLarge(input, output);
+        }
+        byte[] buffer = BufferPool.takeBytes();
+        try {
+            return copyLarge(new ThrottledInputStream(input, limiter), output, buffer);
+        } finally {
+            BufferPool.recycle(buffer);
+        }
+    }
+
+    /**
+     * Copy bytes from an <code>InputStream to an <code>OutputStream
+     * and hash them in the same pass.
+     * <p/>
+     * This method buffers the input internally, so there is no need to use a
+     * <code>BufferedInputStream.
+     *
+     * @param input      the <code>InputStream to read from
+     * @param output     the <code>OutputStream to write to
+     * @param algorithms the {@link MultiDigest} algorithms to compute, at least one
+     * @return the number of bytes copied and their hashes
+     * @throws NullPointerException     if the input or output is null
+     * @throws IllegalArgumentException if an algorithm is not supported
+     * @throws IOException              if an I/O error occurs
+     */
+    public static MultiDigest.Result copyAndDigest(InputStream input, OutputStream output, String... algorithms)
+            throws IOException {
+        MultiDigest digest = new MultiDigest(algorithms);
+        byte[] buffer = BufferPool.takeBytes();
+        try {
+            int n;
+            while (-1 != (n = input.read(buffer))) {
+                output.write(buffer, 0, n);
+                digest.update(buffer, 0, n);
+            }
+        } finally {
+            BufferPool.recycle(buffer);
+        }
+        return digest.finish();
+    }
+
+    /**
+     * Copy bytes from a <code>FileChannel to another <code>FileChannel
+     * without moving them through the Java heap.
+     * <p/>
+     * The copy starts at the current position of <code>input and stops at
+     * its end of stream. Up to the size <code>input reports, the data is
+     * handed to {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+     * in bounded chunks, so the kernel can move it directly between the files.
+     * The size is only a hint: whatever follows it, and the whole input when it
+     * cannot report a position or size (a pipe), is copied through a direct
+     * buffer. The position of both channels is advanced by the number of bytes
+     * copied.
+     *
+     * @param input  the <code>FileChannel to read from
+     * @param output the <code>FileChannel to write to
+     * @return the number of bytes copied
+     * @throws NullPointerException if the input or output is null
+     * @throws IOException          if an I/O error occurs
+     */
+    public static long copyLarge(FileChannel input, FileChannel output) throws IOException {
+        long start;
+        long size;
+        try {
+            start = input.position();
+            size = input.size();
+        } catch (IOException e) {
+            // not seekable, a pipe or FIFO; copy through a buffer
+            return copyLarge(input, output, Long.MAX_VALUE);
+        }
+        long position = start;
+        while (position < size) {
+            long count = input.transferTo(position, Math.min(size - position, CHANNEL_TRANSFER_SIZE), output);
+            if (count <= 0) {
+                // no progress, some file systems refuse transferTo; finish through a buffer
+                break;
+            }
+            position += count;
+        }
+        input.position(position);
+        // procfs reports a size of 0 and files may grow, read on until the end of stream
+        return position - start + copyLarge(input, output, Long.MAX_VALUE);
+    }
+
+    /**
+     * Copy all bytes from a <code>ReadableByteChannel to a
+     * <code>WritableByteChannel.
+     * <p/>
+     * Two <code>FileChannels are copied with
+     * {@link #copyLarge(FileChannel, FileChannel)}, other channels through a
+     * direct buffer taken from {@link DirectBufferPool}.
+     *
+     * @param input  the blocking channel to read from
+     * @param output the blocking channel to write to
+     * @return the number of bytes copied
+     * @throws NullPointerException if the input or output is null
+     * @throws IOException          if an I/O error occurs
+     */
+    public static long copyLarge(ReadableByteChannel input, WritableByteChannel output) throws IOException {
+        if (input instanceof FileChannel && output instanceof FileChannel) {
+            return copyLarge((FileChannel) input, (FileChannel) output);
+        }
+        return copyLarge(input, output, Long.MAX_VALUE);
+    }
+
+    /**
+     * Copy at most <code>limit bytes between two channels through a pooled direct buffer.
+     */
+    private static long copyLarge(ReadableByteChannel input, WritableByteChannel output, long limit)
+            throws IOException {
+        ByteBuffer buffer = DirectBufferPool.acquire(DIRECT_BUFFER_SIZE);
+        try {
+            long count = 0;
+            while (count < limit) {
+                if (limit - count < buffer.capacity()) {
+                    buffer.limit((int) (limit - count));
+                }
+                int n = input.read(buffer);
+                if (n < 0) {
+                    break;
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    output.write(buffer);
+                }
+                buffer.clear();
+                count += n;
+            }
+            return count;
+        } finally {
+            DirectBufferPool.release(buffer);
+        }
     }
 
 
@@ -822,8 +1268,11 @@ public class IOUtils {
      * Compare the contents of two Streams to determine if they are equal or
      * not.
      * <p/>
-     * This method buffers the input internally using
-     * <code>BufferedInputStream if they are not already buffered.
+     * This method buffers the input internally using pooled buffers and
+     * compares the content block by block. Two non-empty regular files with
+     * a different number of remaining bytes are reported as different without
+     * reading them. Use {@link ContentComparator} to find the offset of the
+     * first difference.
      *
      * @param input1 the first stream
      * @param input2 the second stream
@@ -833,32 +1282,29 @@ public class IOUtils {
      * @throws IOException          if an I/O error occurs
      */
     public static boolean contentEquals(InputStream input1, InputStream input2) throws IOException {
-        if (!(input1 instanceof BufferedInputStream)) {
-            input1 = new BufferedInputStream(input1);
-        }
-        if (!(input2 instanceof BufferedInputStream)) {
-            input2 = new BufferedInputStream(input2);
-        }
-
-        int ch = input1.read();
-        while (-1 != ch) {
-            int ch2 = input2.read();
-            if (ch != ch2) {
-                return false;
+        if (input1 instanceof FileInputStream && input2 instanceof FileInputStream) {
+            try {
+                FileChannel channel1 = ((FileInputStream) input1).getChannel();
+                FileChannel channel2 = ((FileInputStream) input2).getChannel();
+                long size1 = channel1.size();
+                long size2 = channel2.size();
+                // procfs files report a size of 0, only trust non-empty sizes
+                if (size1 != 0 && size2 != 0
+                        && size1 - channel1.position() != size2 - channel2.position()) {
+                    return false;
+                }
+            } catch (IOException e) {
+                // not a regular file, compare the content
             }
-            ch = input1.read();
         }
-
-        int ch2 = input2.read();
-        return (ch2 == -1);
+        return ContentComparator.mismatch(input1, input2) == -1;
     }
 
     /**
      * Compare the contents of two Readers to determine if they are equal or
      * not.
      * <p/>
-     * This method buffers the input internally using
-     * <code>BufferedReader if they are not already buffered.
+     * This method buffers the input internally using pooled buffers.
      *
      * @param input1 the first reader
      * @param input2 the second reader
@@ -869,41 +1315,172 @@ public class IOUtils {
      * @since Commons IO 1.1
      */
     public static boolean contentEquals(Reader input1, Reader input2) throws IOException {
-        if (!(input1 instanceof BufferedReader)) {
-            input1 = new BufferedReader(input1);
-        }
-        if (!(input2 instanceof BufferedReader)) {
-            input2 = new BufferedReader(input2);
-        }
-
-        int ch = input1.read();
-        while (-1 != ch) {
-            int ch2 = input2.read();
-            if (ch != ch2) {
-                return false;
-            }
-            ch = input1.read();
-        }
-
-        int ch2 = input2.read();
-        return (ch2 == -1);
+        return ContentComparator.mismatch(input1, input2) == -1;
     }
 
+    // skip
+    // -----------------------------------------------------------------------
+
     /**
      * Skip bytes from an input byte stream.
+     * <p/>
+     * A <code>FileInputStream whose file holds enough bytes is skipped by
+     * moving its channel position, nothing is read. Other streams are read into
+     * a pooled buffer, never past the skipped range, so the following bytes are
+     * still available to the caller.
      *
      * @param input  byte stream to skip
      * @param toSkip number of bytes to skip.
+     * @throws EOFException             if the stream ends before <code>toSkip bytes
      * @throws IOException              if there is a problem reading the file
      * @throws IllegalArgumentException if toSkip is negative
      * @see InputStream#skip(long)
      * @since Commons IO 2.0
      */
     public static void skip(InputStream input, long toSkip) throws IOException {
+        checkSkip(toSkip);
+        if (input instanceof FileInputStream && trySeek(((FileInputStream) input).getChannel(), toSkip)) {
+            return;
+        }
+
+        byte[] buffer = BufferPool.takeBytes();
+        try {
+            long remain = toSkip;
+            while (remain > 0) {
+                int n = input.read(buffer, 0, (int) Math.min(remain, buffer.length));
+                if (n < 0) {
+                    throw new EOFException("Bytes to skip: " + toSkip + " actual: " + (toSkip - remain));
+                }
+                remain -= n;
+            }
+        } finally {
+            BufferPool.recycle(buffer);
+        }
+    }
+
+    /**
+     * Skip characters from an input character stream.
+     *
+     * @param input  character stream to skip
+     * @param toSkip number of characters to skip.
+     * @throws EOFException             if the stream ends before <code>toSkip characters
+     * @throws IOException              if there is a problem reading the stream
+     * @throws IllegalArgumentException if toSkip is negative
+     * @see Reader#skip(long)
+     */
+    public static void skip(Reader input, long toSkip) throws IOException {
+        checkSkip(toSkip);
+        char[] buffer = BufferPool.takeChars();
+        try {
+            long remain = toSkip;
+            while (remain > 0) {
+                int n = input.read(buffer, 0, (int) Math.min(remain, buffer.length));
+                if (n < 0) {
+                    throw new EOFException("Chars to skip: " + toSkip + " actual: " + (toSkip - remain));
+                }
+                remain -= n;
+            }
+        } finally {
+            BufferPool.recycle(buffer);
+        }
+    }
+
+    /**
+     * Skip bytes from a source.
+     * <p/>
+     * A <code>BufferedSource skips from its buffer first; other sources are
+     * read in bounded chunks that stop at the end of the skipped range.
+     *
+     * @param source the source to skip
+     * @param toSkip number of bytes to skip.
+     * @throws EOFException             if the source ends before <code>toSkip bytes
+     * @throws IOException              if there is a problem reading the source
+     * @throws IllegalArgumentException if toSkip is negative
+     */
+    public static void skip(Source source, long toSkip) throws IOException {
+        checkSkip(toSkip);
+        if (source instanceof BufferedSource) {
+            ((BufferedSource) source).skip(toSkip);
+            return;
+        }
+        Buffer buffer = new Buffer();
+        long remain = toSkip;
+        while (remain > 0) {
+            long n = source.read(buffer, Math.min(remain, BufferPool.BUFFER_SIZE));
+            if (n < 0) {
+                throw new EOFException("Bytes to skip: " + toSkip + " actual: " + (toSkip - remain));
+            }
+            buffer.clear();
+            remain -= n;
+        }
+    }
+
+    /**
+     * Skip bytes from a file channel by moving its position.
+     *
+     * @param input  the channel to skip
+     * @param toSkip number of bytes to skip.
+     * @throws EOFException             if the file has less than <code>toSkip bytes left,
+     *                                  the position is moved to its end
+     * @throws IOException              if there is a problem accessing the file
+     * @throws IllegalArgumentException if toSkip is negative
+     */
+    public static void skip(FileChannel input, long toSkip) throws IOException {
+        checkSkip(toSkip);
+        if (!trySeek(input, toSkip)) {
+            long position = input.position();
+            long size = input.size();
+            input.position(Math.max(position, size));
+            throw new EOFException("Bytes to skip: " + toSkip + " actual: " + Math.max(0, size - position));
+        }
+    }
+
+    /**
+     * Skip bytes from a random access file by moving its file pointer.
+     * <p/>
+     * Unlike {@link RandomAccessFile#skipBytes(int)} this accepts a long count.
+     *
+     * @param input  the file to skip
+     * @param toSkip number of bytes to skip.
+     * @throws EOFException             if the file has less than <code>toSkip bytes left,
+     *                                  the file pointer is moved to its end
+     * @throws IOException              if there is a problem accessing the file
+     * @throws IllegalArgumentException if toSkip is negative
+     */
+    public static void skip(RandomAccessFile input, long toSkip) throws IOException {
+        checkSkip(toSkip);
+        long position = input.getFilePointer();
+        long length = input.length();
+        if (length - position < toSkip) {
+            input.seek(Math.max(position, length));
+            throw new EOFException("Bytes to skip: " + toSkip + " actual: " + Math.max(0, length - position));
+        }
+        input.seek(position + toSkip);
+    }
+
+    private static void checkSkip(long toSkip) {
         if (toSkip < 0) {
             throw new IllegalArgumentException("Skip count must be non-negative, actual: " + toSkip);
         }
+    }
 
-        toSource(input).skip(toSkip);
+    /**
+     * Move the position of <code>channel forward if the file is long enough.
+     *
+     * @return false if the channel was left untouched because it has less than
+     * <code>toSkip bytes left or its size is unknown
+     */
+    private static boolean trySeek(FileChannel channel, long toSkip) {
+        try {
+            long position = channel.position();
+            if (channel.size() - position < toSkip) {
+                return false;
+            }
+            channel.position(position + toSkip);
+            return true;
+        } catch (IOException e) {
+            // pipes and other special files, read through them instead
+            return false;
+        }
     }
 }
@@ -0,0 +1,338 @@
+package cn.jony.libutil.io;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
+
+/**
+ * An index of the line start offsets of a UTF-8 text file, for jumping
+ * straight to a given line.
+ * <p/>
+ * Only the offset of every <code>interval-th line is kept, so the index
+ * costs 8 bytes of memory per <code>interval lines. Reading line
+ * <code>n seeks to the sampled line preceding it and skips at most
+ * <code>interval - 1 lines. Lines are split like {@link Utf8LineReader}
+ * does, at <code>'\n', <code>'\r' and <code>"\r\n".
+ * <p/>
+ * The index can be saved to a sidecar file next to the indexed file, with
+ * the offsets delta-encoded. It records the size and modification time of the
+ * file and is only loaded back while both still match:
+ * <pre>
+ * LineIndex index = LineIndex.open(logFile);
+ * List&lt;String&gt; lines = index.readLines(logFile, 1000000, 1000100);
+ * </pre>
+ *
+ * @author jony
+ */
+@SuppressWarnings("unused")
+public class LineIndex {
+    /**
+     * The default number of lines between two sampled offsets.
+     */
+    public static final int DEFAULT_INTERVAL = 256;
+    /**
+     * The suffix appended to the path of a file to name its sidecar index.
+     */
+    public static final String SUFFIX = ".lidx";
+
+    private static final int MAGIC = 0x4c494458; // "LIDX"
+    private static final int VERSION = 1;
+    /**
+     * The bytes of a saved index before its samples.
+     */
+    private static final int HEADER_LENGTH = 4 + 4 + 8 + 8 + 4 + 8 + 4;
+
+    private final long fileSize;
+    private final long lastModified;
+    private final int interval;
+    private final long lineCount;
+    private final long[] samples;
+
+    private LineIndex(long fileSize, long lastModified, int interval, long lineCount, long[] samples) {
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+        this.interval = interval;
+        this.lineCount = lineCount;
+        this.samples = samples;
+    }
+
+    /**
+     * Load the sidecar index of <code>file if it is still valid, or build and save a new one.
+     *
+     * @see #open(File, int)
+     */
+    public static LineIndex open(File file) throws IOException {
+        return open(file, DEFAULT_INTERVAL);
+    }
+
+    /**
+     * Load the sidecar index of <code>file if it is still valid and uses
+     * <code>interval, or build a new one and try to save it.
+     *
+     * @param file     the indexed file
+     * @param interval the number of lines between two sampled offsets
+     * @return the index, never null
+     * @throws IOException if the file can not be read
+     */
+    public static LineIndex open(File file, int interval) throws IOException {
+        LineIndex index = load(file);
+        if (index != null && index.interval == interval) {
+            return index;
+        }
+        index = build(file, interval);
+        try {
+            index.save(sidecarOf(file));
+        } catch (IOException e) {
+            // read-only location, the index is still usable in memory
+        }
+        return index;
+    }
+
+    /**
+     * @return the sidecar file holding the index of <code>file
+     */
+    public static File sidecarOf(File file) {
+        return new File(file.getPath() + SUFFIX);
+    }
+
+    /**
+     * Scan <code>file and record the offset of every <code>interval-th line.
+     *
+     * @param file     the file to index
+     * @param interval the number of lines between two sampled offsets
+     * @return the new index
+     * @throws IOException if the file can not be read
+     */
+    public static LineIndex build(File file, int interval) throws IOException {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Interval must be positive, actual: " + interval);
+        }
+        long lastModified = file.lastModified();
+        InputStream input = new FileInputStream(file);
+        long[] samples = new long[16];
+        int sampleCount = 0;
+        long lineCount = 0;
+        long offset = 0;
+        byte[] buffer = BufferPool.takeBytes();
+        try {
+            long lineStart = 0;
+            boolean pendingCr = false;
+            int n;
+            while ((n = input.read(buffer)) != -1) {
+                for (int i = 0; i < n; i++) {
+                    byte b = buffer[i];
+                    long position = offset + i;
+                    if (pendingCr) {
+                        pendingCr = false;
+                        if (b != '\n') {
+                            // a lone '\r' ended the previous line
+                            lineStart = position;
+                        }
+                    }
+                    if (lineStart == position) {
+                        if (lineCount % interval == 0) {
+                            if (sampleCount == samples.length) {
+                                long[] grown = new long[samples.length * 2];
+                                System.arraycopy(samples, 0, grown, 0, sampleCount);
+                                samples = grown;
+                            }
+                            samples[sampleCount++] = position;
+                        }
+                        lineCount++;
+                    }
+                    if (b == '\n') {
+                        lineStart = position + 1;
+                    } else if (b == '\r') {
+                        pendingCr = true;
+                        lineStart = -1;
+                    }
+                }
+                offset += n;
+            }
+        } finally {
+            BufferPool.recycle(buffer);
+            IOUtils.closeQuietly(input);
+        }
+        long[] trimmed = new long[sampleCount];
+        System.arraycopy(samples, 0, trimmed, 0, sampleCount);
+        return new LineIndex(offset, lastModified, interval, lineCount, trimmed);
+    }
+
+    /**
+     * Load the sidecar index of <code>file.
+     *
+     * @param file the indexed file
+     * @return the index, or null if there is none or it does not match the
+     * current size and modification time of <code>file
+     */
+    public static LineIndex load(File file) {
+        File sidecar = sidecarOf(file);
+        if (!sidecar.isFile()) {
+            return null;
+        }
+        BufferedSource source = null;
+        try {
+            source = Okio.buffer(Okio.source(sidecar));
+            if (source.readInt() != MAGIC || source.readInt() != VERSION) {
+                return null;
+            }
+            long fileSize = source.readLong();
+            long lastModified = source.readLong();
+            int interval = source.readInt();
+            long lineCount = source.readLong();
+            int sampleCount = source.readInt();
+            if (interval <= 0 || sampleCount < 0 || sampleCount != (lineCount + interval - 1) / interval) {
+                return null;
+            }
+            // every sample takes at least one byte, do not trust the header with the allocation
+            if (sampleCount > sidecar.length() - HEADER_LENGTH) {
+                return null;
+            }
+            long[] samples = new long[sampleCount];
+            long previous = 0;
+            for (int i = 0; i < sampleCount; i++) {
+                previous += readVarLong(source);
+                samples[i] = previous;
+            }
+            LineIndex index = new LineIndex(fileSize, lastModified, interval, lineCount, samples);
+            return index.isValidFor(file) ? index : null;
+        } catch (IOException e) {
+            return null;
+        } finally {
+            IOUtils.closeQuietly(source);
+        }
+    }
+
+    /**
+     * Write this index to <code>sidecar.
+     *
+     * @param sidecar the file to write, usually {@link #sidecarOf(File)}
+     * @throws IOException if the file can not be written
+     */
+    public void save(File sidecar) throws IOException {
+        File temp = new File(sidecar.getPath() + ".tmp");
+        BufferedSink sink = Okio.buffer(Okio.sink(temp));
+        try {
+            sink.writeInt(MAGIC);
+            sink.writeInt(VERSION);
+            sink.writeLong(fileSize);
+            sink.writeLong(lastModified);
+            sink.writeInt(interval);
+            sink.writeLong(lineCount);
+            sink.writeInt(samples.length);
+            long previous = 0;
+            for (long sample : samples) {
+                writeVarLong(sink, sample - previous);
+                previous = sample;
+            }
+        } finally {
+            IOUtils.closeQuietly(sink);
+        }
+        if (!temp.renameTo(sidecar)) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            throw new IOException("Failed to write " + sidecar);
+        }
+    }
+
+    /**
+     * @return true if <code>file still has the size and modification time it had when indexed
+     */
+    public boolean isValidFor(File file) {
+        return file.length() == fileSize && file.lastModified() == lastModified;
+    }
+
+    /**
+     * @return the number of lines of the indexed file
+     */
+    public long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @return the number of lines between two sampled offsets
+     */
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * Read one line of <code>file.
+     *
+     * @param file       the indexed file
+     * @param lineNumber the zero-based number of the line
+     * @return the line without its terminator
+     * @throws IOException if the file changed since it was indexed or can not be read
+     */
+    public String readLine(File file, long lineNumber) throws IOException {
+        return readLines(file, lineNumber, lineNumber + 1).get(0);
+    }
+
+    /**
+     * Read the lines <code>[from, to) of <code>file.
+     *
+     * @param file the indexed file
+     * @param from the zero-based number of the first line, inclusive
+     * @param to   the zero-based number of the last line, exclusive
+     * @return the lines without their terminators
+     * @throws IOException if the file changed since it was indexed or can not be read
+     */
+    public List<String> readLines(File file, long from, long to) throws IOException {
+        if (from < 0 || to > lineCount || from > to) {
+            throw new IndexOutOfBoundsException("from=" + from + " to=" + to + " lineCount=" + lineCount);
+        }
+        if (!isValidFor(file)) {
+            throw new IOException("Index is stale for " + file);
+        }
+        List<String> lines = new ArrayList<>((int) Math.min(to - from, 1024));
+        if (from == to) {
+            return lines;
+        }
+        FileInputStream input = new FileInputStream(file);
+        try {
+            int sample = (int) (from / interval);
+            input.getChannel().position(samples[sample]);
+            Utf8LineReader reader = new Utf8LineReader(input);
+            for (long i = (long) sample * interval; i < to; i++) {
+                String line = reader.readLine();
+                if (line == null) {
+                    throw new EOFException("File ended at line " + i + " of " + file);
+                }
+                if (i >= from) {
+                    lines.add(line);
+                }
+            }
+            return lines;
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    static void writeVarLong(BufferedSink sink, long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            sink.writeByte((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        sink.writeByte((int) value);
+    }
+
+    static long readVarLong(BufferedSource source) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = source.readByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed index");
+    }
+}
@@ -8,6 +8,7 @@ import java.util.NoSuchElementException;
 
 public class LineIterator implements Iterator<String> {
     private final BufferedReader bufferedReader;
+    private final Utf8LineReader lineReader;
     private String cachedLine;
     private boolean finished = false;
 
@@ -21,6 +22,20 @@ public class LineIterator implements Iterator<String> {
                 this.bufferedReader = new BufferedReader(reader);
             }
 
+            this.lineReader = null;
+        }
+    }
+
+    /**
+     * Iterate over the lines of a {@link Utf8LineReader}, which splits the
+     * input at the byte level instead of decoding it through a Reader first.
+     */
+    public LineIterator(Utf8LineReader reader) throws IllegalArgumentException {
+        if(reader == null) {
+            throw new IllegalArgumentException("Reader must not be null");
+        } else {
+            this.bufferedReader = null;
+            this.lineReader = reader;
         }
     }
 
@@ -33,7 +48,7 @@ public class LineIterator implements Iterator<String> {
             try {
                 String ioe;
                 do {
-                    ioe = this.bufferedReader.readLine();
+                    ioe = this.readLine();
                     if(ioe == null) {
                         this.finished = true;
                         return false;
@@ -49,6 +64,10 @@ public class LineIterator implements Iterator<String> {
         }
     }
 
+    private String readLine() throws IOException {
+        return this.lineReader != null ? this.lineReader.readLine() : this.bufferedReader.readLine();
+    }
+
     protected boolean isValidLine(String line) {
         return true;
     }
@@ -70,6 +89,7 @@ public class LineIterator implements Iterator<String> {
     public void close() {
         this.finished = true;
         IOUtils.closeQuietly(this.bufferedReader);
+        IOUtils.closeQuietly(this.lineReader);
         this.cachedLine = null;
     }
 
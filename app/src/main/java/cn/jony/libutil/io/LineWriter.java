@@ -0,0 +1,219 @@
+package cn.jony.libutil.io;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Iterator;
+
+/**
+ * Writes lines of text to an {@link OutputStream}, encoding them straight into
+ * a pooled byte buffer.
+ * <p/>
+ * One {@link CharsetEncoder} is reused for every line and the line ending is
+ * encoded once, so writing a line does not allocate anything. Characters that
+ * can not be encoded are replaced, as {@link String#getBytes(String)} does.
+ * <p/>
+ * The encoded bytes are handed to the stream whenever the buffer is full, on
+ * {@link #flush()} and on {@link #close()}. Closing the writer also closes the
+ * stream; call {@link #flush()} and {@link #release()} instead to keep it open.
+ * <p/>
+ * This class is not thread-safe.
+ *
+ * @author jony
+ * @see IOUtils#writeLines(java.util.Collection, String, OutputStream, String)
+ */
+@SuppressWarnings("unused")
+public class LineWriter implements Closeable, Flushable {
+    private final OutputStream output;
+    private final CharsetEncoder encoder;
+    private final byte[] lineEnding;
+    private byte[] byteArray;
+    private char[] charArray;
+    private ByteBuffer bytes;
+    private CharBuffer chars;
+
+    /**
+     * @param output     the stream to write to, not null
+     * @param charset    the charset to encode with, null means platform default
+     * @param lineEnding the line separator to use, null is system default
+     */
+    public LineWriter(OutputStream output, Charset charset, String lineEnding) {
+        if (output == null) {
+            throw new IllegalArgumentException("OutputStream must not be null");
+        }
+        if (charset == null) {
+            charset = Charset.defaultCharset();
+        }
+        if (lineEnding == null) {
+            lineEnding = IOUtils.LINE_SEPARATOR;
+        }
+        this.output = output;
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.lineEnding = lineEnding.getBytes(charset);
+        this.byteArray = BufferPool.takeBytes();
+        this.charArray = BufferPool.takeChars();
+        this.bytes = ByteBuffer.wrap(byteArray);
+        this.chars = CharBuffer.wrap(charArray);
+    }
+
+    /**
+     * Write one line followed by the line ending.
+     *
+     * @param line the line, null produces a blank line
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeLine(CharSequence line) throws IOException {
+        checkOpen();
+        if (line != null) {
+            encode(line);
+        }
+        write(lineEnding);
+    }
+
+    /**
+     * Write the <code>toString() value of each item, one per line.
+     *
+     * @param lines the lines to write, null entries produce blank lines
+     * @return the number of lines written
+     * @throws IOException if an I/O error occurs
+     */
+    public long writeLines(Iterable<?> lines) throws IOException {
+        return writeLines(lines.iterator());
+    }
+
+    /**
+     * Write the <code>toString() value of each remaining item, one per line.
+     *
+     * @param lines the lines to write, null entries produce blank lines
+     * @return the number of lines written
+     * @throws IOException if an I/O error occurs
+     */
+    public long writeLines(Iterator<?> lines) throws IOException {
+        long count = 0;
+        while (lines.hasNext()) {
+            Object line = lines.next();
+            writeLine(line == null || line instanceof CharSequence ? (CharSequence) line : line.toString());
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Hand the buffered bytes to the stream and flush it.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void flush() throws IOException {
+        checkOpen();
+        drain();
+        output.flush();
+    }
+
+    /**
+     * Return the buffers of this writer to {@link BufferPool} without closing
+     * the stream. Bytes not flushed yet are lost; the writer can not be used afterwards.
+     */
+    public void release() {
+        if (byteArray != null) {
+            BufferPool.recycle(byteArray);
+            BufferPool.recycle(charArray);
+            byteArray = null;
+            charArray = null;
+            bytes = null;
+            chars = null;
+        }
+    }
+
+    /**
+     * Flush the buffered bytes, release the buffers and close the stream.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        if (byteArray == null) {
+            return;
+        }
+        try {
+            drain();
+            output.flush();
+        } finally {
+            release();
+            output.close();
+        }
+    }
+
+    private void encode(CharSequence line) throws IOException {
+        encoder.reset();
+        int length = line.length();
+        int index = 0;
+        while (true) {
+            int n = Math.min(chars.remaining(), length - index);
+            copyChars(line, index, index + n, chars.position());
+            chars.position(chars.position() + n);
+            index += n;
+            chars.flip();
+            boolean endOfInput = index == length;
+            // with REPLACE actions the encoder only reports underflow or overflow
+            while (encoder.encode(chars, bytes, endOfInput).isOverflow()) {
+                drain();
+            }
+            // a high surrogate left at the end of a chunk stays for the next one
+            chars.compact();
+            if (endOfInput) {
+                break;
+            }
+        }
+        while (encoder.flush(bytes).isOverflow()) {
+            drain();
+        }
+        chars.clear();
+    }
+
+    private void copyChars(CharSequence line, int start, int end, int offset) {
+        if (line instanceof String) {
+            ((String) line).getChars(start, end, charArray, offset);
+        } else if (line instanceof StringBuilder) {
+            ((StringBuilder) line).getChars(start, end, charArray, offset);
+        } else if (line instanceof StringBuffer) {
+            ((StringBuffer) line).getChars(start, end, charArray, offset);
+        } else {
+            for (int i = start; i < end; i++) {
+                charArray[offset++] = line.charAt(i);
+            }
+        }
+    }
+
+    private void write(byte[] data) throws IOException {
+        if (bytes.remaining() < data.length) {
+            drain();
+            if (bytes.remaining() < data.length) {
+                output.write(data);
+                return;
+            }
+        }
+        bytes.put(data);
+    }
+
+    private void drain() throws IOException {
+        if (bytes.position() > 0) {
+            output.write(byteArray, 0, bytes.position());
+            bytes.clear();
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (byteArray == null) {
+            throw new IOException("LineWriter is closed");
+        }
+    }
+}
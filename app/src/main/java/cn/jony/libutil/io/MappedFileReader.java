@@ -0,0 +1,269 @@
+package cn.jony.libutil.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static cn.jony.libutil.Constants.UTF_8;
+
+/**
+ * Read-only access to a file through one or more {@link MappedByteBuffer} windows.
+ * <p/>
+ * The file is split into windows of a fixed size which are mapped lazily the
+ * first time they are touched, so large files can be scanned without copying
+ * their content onto the heap. Positions are always absolute offsets into the
+ * file, regardless of the window they fall into.
+ * <p/>
+ * Typical usage:
+ * <pre>
+ * MappedFileReader reader = new MappedFileReader(file);
+ * try {
+ *     long end = reader.indexOf((byte) '\n', 0);
+ *     if (end == -1) {
+ *         end = reader.size(); // no newline, the whole file is one line
+ *     }
+ *     String firstLine = reader.readUtf8(0, (int) end);
+ * } finally {
+ *     IOUtils.closeQuietly(reader);
+ * }
+ * </pre>
+ * <p/>
+ * The content seen through the windows is the one of the file at the time
+ * this reader was created; the file should not be truncated while it is mapped.
+ * Instances may be shared between threads, the reading methods never touch the
+ * position of the underlying buffers.
+ *
+ * @author jony
+ */
+@SuppressWarnings("unused")
+public class MappedFileReader implements Closeable {
+    /**
+     * The default size of a mapped window, kept small enough to find room in a
+     * 32 bit address space.
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 1024 * 1024 * 64;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long size;
+    private final int windowSize;
+    private final AtomicReferenceArray<MappedByteBuffer> windows;
+
+    /**
+     * Construct a new reader using {@link #DEFAULT_WINDOW_SIZE}.
+     *
+     * @param file the file to map, not null
+     * @throws IOException if the file can not be opened
+     */
+    public MappedFileReader(File file) throws IOException {
+        this(file, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Construct a new reader mapping the file in windows of <code>windowSize bytes.
+     *
+     * @param file       the file to map, not null
+     * @param windowSize the maximum size of a single mapped window
+     * @throws IOException              if the file can not be opened
+     * @throws IllegalArgumentException if windowSize is not positive
+     */
+    public MappedFileReader(File file, int windowSize) throws IOException {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("Window size must be positive, actual: " + windowSize);
+        }
+        this.file = new RandomAccessFile(file, "r");
+        this.channel = this.file.getChannel();
+        this.size = channel.size();
+        this.windowSize = windowSize;
+        this.windows = new AtomicReferenceArray<>((int) ((size + windowSize - 1) / windowSize));
+    }
+
+    /**
+     * @return the size of the mapped file in bytes
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return the number of windows the file is split into
+     */
+    public int windowCount() {
+        return windows.length();
+    }
+
+    /**
+     * Return the window at <code>index, mapping it if necessary. The
+     * returned buffer is a duplicate, its position and limit may be changed freely.
+     *
+     * @param index the index of the window, from 0 to {@link #windowCount()} - 1
+     * @return a view of the window
+     * @throws IOException if the window can not be mapped
+     */
+    public ByteBuffer window(int index) throws IOException {
+        return map(index).duplicate();
+    }
+
+    /**
+     * Read the byte at <code>position.
+     *
+     * @param position the absolute offset in the file
+     * @return the byte at that offset
+     * @throws IOException if the window can not be mapped
+     */
+    public byte get(long position) throws IOException {
+        checkRange(position, 1);
+        return map((int) (position / windowSize)).get((int) (position % windowSize));
+    }
+
+    /**
+     * Return a view of <code>length bytes starting at <code>position.
+     * <p/>
+     * When the range lies inside one window the result shares the mapped memory,
+     * otherwise the bytes are copied into a heap buffer.
+     *
+     * @param position the absolute offset of the first byte
+     * @param length   the number of bytes
+     * @return a buffer positioned at 0 with <code>length remaining bytes
+     * @throws IOException if a window can not be mapped
+     */
+    public ByteBuffer slice(long position, int length) throws IOException {
+        checkRange(position, length);
+        int index = (int) (position / windowSize);
+        int offset = (int) (position % windowSize);
+        if (offset + length <= windowSize) {
+            ByteBuffer view = map(index).duplicate();
+            view.limit(offset + length);
+            view.position(offset);
+            return view.slice();
+        }
+
+        ByteBuffer copy = ByteBuffer.allocate(length);
+        while (copy.hasRemaining()) {
+            ByteBuffer view = map(index++).duplicate();
+            view.position(offset);
+            view.limit(Math.min(view.capacity(), offset + copy.remaining()));
+            copy.put(view);
+            offset = 0;
+        }
+        copy.flip();
+        return copy;
+    }
+
+    /**
+     * Decode <code>length bytes starting at <code>position as UTF-8.
+     *
+     * @param position the absolute offset of the first byte
+     * @param length   the number of bytes to decode
+     * @return the decoded string
+     * @throws IOException if a window can not be mapped
+     */
+    public String readUtf8(long position, int length) throws IOException {
+        return readString(position, length, Charset.forName(UTF_8));
+    }
+
+    /**
+     * Decode <code>length bytes starting at <code>position with the given charset.
+     *
+     * @param position the absolute offset of the first byte
+     * @param length   the number of bytes to decode
+     * @param charset  the charset to use, not null
+     * @return the decoded string
+     * @throws IOException if a window can not be mapped
+     */
+    public String readString(long position, int length, Charset charset) throws IOException {
+        return charset.decode(slice(position, length)).toString();
+    }
+
+    /**
+     * Find the first occurrence of <code>b at or after <code>fromIndex.
+     *
+     * @param b         the byte to look for
+     * @param fromIndex the absolute offset to start from
+     * @return the offset of the byte, or -1 if it does not occur
+     * @throws IOException if a window can not be mapped
+     */
+    public long indexOf(byte b, long fromIndex) throws IOException {
+        if (fromIndex < 0) {
+            fromIndex = 0;
+        }
+        for (int index = (int) (fromIndex / windowSize); index < windows.length(); index++) {
+            MappedByteBuffer window = map(index);
+            long base = (long) index * windowSize;
+            int limit = window.limit();
+            for (int i = (int) Math.max(0, fromIndex - base); i < limit; i++) {
+                if (window.get(i) == b) {
+                    return base + i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find the first occurrence of <code>delimiter at or after <code>fromIndex.
+     * Matches spanning two windows are found as well.
+     *
+     * @param delimiter the bytes to look for, not empty
+     * @param fromIndex the absolute offset to start from
+     * @return the offset of the first byte of the match, or -1 if it does not occur
+     * @throws IOException              if a window can not be mapped
+     * @throws IllegalArgumentException if the delimiter is empty
+     */
+    public long indexOf(byte[] delimiter, long fromIndex) throws IOException {
+        if (delimiter.length == 0) {
+            throw new IllegalArgumentException("Delimiter must not be empty");
+        }
+        long last = size - delimiter.length;
+        long position = fromIndex;
+        while ((position = indexOf(delimiter[0], position)) != -1 && position <= last) {
+            if (rangeEquals(position, delimiter)) {
+                return position;
+            }
+            position++;
+        }
+        return -1;
+    }
+
+    /**
+     * Close the underlying file. Windows handed out before remain readable
+     * until they are garbage collected.
+     */
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private boolean rangeEquals(long position, byte[] bytes) throws IOException {
+        for (int i = 1; i < bytes.length; i++) {
+            if (get(position + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void checkRange(long position, int length) {
+        if (position < 0 || length < 0 || position + length > size) {
+            throw new IndexOutOfBoundsException("position=" + position + " length=" + length + " size=" + size);
+        }
+    }
+
+    private MappedByteBuffer map(int index) throws IOException {
+        MappedByteBuffer window = windows.get(index);
+        if (window == null) {
+            long position = (long) index * windowSize;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(windowSize, size - position));
+            if (!windows.compareAndSet(index, null, window)) {
+                window = windows.get(index);
+            }
+        }
+        return window;
+    }
+}
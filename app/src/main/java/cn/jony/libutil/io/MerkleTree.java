@@ -0,0 +1,425 @@
+package cn.jony.libutil.io;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
+
+/**
+ * A hash tree over the fixed-size chunks of a file.
+ * <p/>
+ * Chunks are hashed in parallel and combined pairwise into a root hash, a
+ * lone node being promoted to the next level. Leaves are hashed as
+ * <code>H(0x00 || chunk) and inner nodes as <code>H(0x01 || left || right),
+ * so a leaf can never pass for an inner node.
+ * <p/>
+ * The chunk hashes can be saved to a sidecar file. When the file is modified
+ * in place, {@link #update(File, long, long, Executor, int)} hashes again only
+ * the chunks covering the modified range, and {@link #diff(MerkleTree)} names
+ * the chunks that differ between two trees:
+ * <pre>
+ * MerkleTree before = MerkleTree.open(file, MultiDigest.SHA_256);
+ * // ... file is modified
+ * List&lt;Integer&gt; changed = before.verify(file, DirectoryWalker.sharedExecutor(), 4);
+ * </pre>
+ * {@link #open(File, String)} hashes on {@link DirectoryWalker#sharedExecutor()}.
+ * Called from a thread of that pool or from a walk visitor, it hashes on the
+ * calling thread rather than queue chunks behind the pool it occupies.
+ * Instances are immutable.
+ *
+ * @author jony
+ * @see FileHasher
+ */
+@SuppressWarnings("unused")
+public class MerkleTree {
+    /**
+     * The default chunk size, 4 MB.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+    /**
+     * The suffix appended to the path of a file to name its sidecar tree.
+     */
+    public static final String SUFFIX = ".mkl";
+
+    private static final int MAGIC = 0x4d4b4c54; // "MKLT"
+    private static final int VERSION = 1;
+
+    /**
+     * The bytes of a saved tree before its hashes, without the algorithm name.
+     */
+    private static final int HEADER_LENGTH = 4 + 4 + 1 + 4 + 8 + 8 + 4 + 4;
+
+    private static final byte[] LEAF_PREFIX = {0};
+    private static final byte[] NODE_PREFIX = {1};
+
+    private final String algorithm;
+    private final int chunkSize;
+    private final long fileSize;
+    private final long lastModified;
+    private final byte[][] leaves;
+    private final byte[] root;
+
+    private MerkleTree(String algorithm, int chunkSize, long fileSize, long lastModified, byte[][] leaves) {
+        this.algorithm = algorithm;
+        this.chunkSize = chunkSize;
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+        this.leaves = leaves;
+        this.root = combine(algorithm, leaves);
+    }
+
+    /**
+     * Load the sidecar tree of <code>file if it is still valid, or build and save a new one,
+     * with {@link #DEFAULT_CHUNK_SIZE} and {@link DirectoryWalker#sharedExecutor()}, or on the
+     * calling thread when it is one of that pool or runs a walk task.
+     *
+     * @param file      the file to hash
+     * @param algorithm the hash algorithm, see {@link MultiDigest}
+     * @return the tree, never null
+     * @throws IOException if the file can not be read
+     */
+    public static MerkleTree open(File file, String algorithm) throws IOException {
+        MerkleTree tree = load(sidecarOf(file));
+        if (tree != null && tree.algorithm.equalsIgnoreCase(algorithm) && tree.chunkSize == DEFAULT_CHUNK_SIZE
+                && tree.isValidFor(file)) {
+            return tree;
+        }
+        Executor executor = DirectoryWalker.isWorkerThread() ? null : DirectoryWalker.sharedExecutor();
+        tree = build(file, algorithm, DEFAULT_CHUNK_SIZE, executor, Runtime.getRuntime().availableProcessors());
+        try {
+            tree.save(sidecarOf(file));
+        } catch (IOException e) {
+            // read-only location, the tree is still usable in memory
+        }
+        return tree;
+    }
+
+    /**
+     * @return the sidecar file holding the tree of <code>file
+     */
+    public static File sidecarOf(File file) {
+        return new File(file.getPath() + SUFFIX);
+    }
+
+    /**
+     * Hash every chunk of <code>file.
+     *
+     * @param file        the file to hash
+     * @param algorithm   the hash algorithm, see {@link MultiDigest}
+     * @param chunkSize   the size of the chunks
+     * @param executor    the executor hashing the chunks, null to hash on the calling thread
+     * @param concurrency the maximum number of chunks hashed at the same time
+     * @return the new tree
+     * @throws IOException if the file can not be read
+     */
+    public static MerkleTree build(File file, String algorithm, int chunkSize, Executor executor, int concurrency)
+            throws IOException {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive, actual: " + chunkSize);
+        }
+        return rehash(file, algorithm, chunkSize, null, -1, 0, executor, concurrency);
+    }
+
+    /**
+     * Build the tree of <code>file after <code>[offset, offset + length)
+     * was modified, hashing again only the chunks covering that range, and the
+     * last chunks if the file was resized.
+     *
+     * @param file        the file this tree was built from
+     * @param offset      the offset of the first modified byte
+     * @param length      the number of modified bytes
+     * @param executor    the executor hashing the chunks, null to hash on the calling thread
+     * @param concurrency the maximum number of chunks hashed at the same time
+     * @return the new tree
+     * @throws IOException if the file can not be read
+     */
+    public MerkleTree update(File file, long offset, long length, Executor executor, int concurrency)
+            throws IOException {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Invalid range, offset: " + offset + ", length: " + length);
+        }
+        return rehash(file, algorithm, chunkSize, this, offset, length, executor, concurrency);
+    }
+
+    /**
+     * Hash <code>file again and compare it with this tree.
+     *
+     * @param file        the file this tree was built from
+     * @param executor    the executor hashing the chunks, null to hash on the calling thread
+     * @param concurrency the maximum number of chunks hashed at the same time
+     * @return the indices of the chunks that differ, empty if the file is unchanged
+     * @throws IOException if the file can not be read
+     */
+    public List<Integer> verify(File file, Executor executor, int concurrency) throws IOException {
+        return diff(build(file, algorithm, chunkSize, executor, concurrency));
+    }
+
+    /**
+     * @param other a tree built with the same algorithm and chunk size
+     * @return the indices of the chunks that differ, including the chunks only one tree has
+     */
+    public List<Integer> diff(MerkleTree other) {
+        if (!algorithm.equalsIgnoreCase(other.algorithm) || chunkSize != other.chunkSize) {
+            throw new IllegalArgumentException("Trees are not comparable: " + algorithm + "/" + chunkSize
+                    + " and " + other.algorithm + "/" + other.chunkSize);
+        }
+        List<Integer> changed = new ArrayList<>();
+        if (Arrays.equals(root, other.root)) {
+            return changed;
+        }
+        int count = Math.max(leaves.length, other.leaves.length);
+        for (int i = 0; i < count; i++) {
+            if (i >= leaves.length || i >= other.leaves.length || !Arrays.equals(leaves[i], other.leaves[i])) {
+                changed.add(i);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @return true if <code>file still has the size and modification time it had when hashed
+     */
+    public boolean isValidFor(File file) {
+        return file.length() == fileSize && file.lastModified() == lastModified;
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * @return the number of chunks, at least 1 since an empty file has one empty chunk
+     */
+    public int getChunkCount() {
+        return leaves.length;
+    }
+
+    /**
+     * @return a copy of the hash of the chunk starting at <code>index * chunkSize
+     */
+    public byte[] getChunkHash(int index) {
+        return leaves[index].clone();
+    }
+
+    /**
+     * @return a copy of the root hash
+     */
+    public byte[] getRoot() {
+        return root.clone();
+    }
+
+    /**
+     * @return the lower case hex root hash
+     */
+    public String getRootHex() {
+        return MultiDigest.toHex(root);
+    }
+
+    /**
+     * Load a tree saved by {@link #save(File)}.
+     *
+     * @param sidecar the file holding the tree
+     * @return the tree, or null if there is none or it is corrupt
+     */
+    public static MerkleTree load(File sidecar) {
+        if (!sidecar.isFile()) {
+            return null;
+        }
+        BufferedSource source = null;
+        try {
+            source = Okio.buffer(Okio.source(sidecar));
+            if (source.readInt() != MAGIC || source.readInt() != VERSION) {
+                return null;
+            }
+            int nameLength = source.readByte() & 0xff;
+            String algorithm = source.readUtf8(nameLength);
+            int chunkSize = source.readInt();
+            long fileSize = source.readLong();
+            long lastModified = source.readLong();
+            int hashLength = source.readInt();
+            int count = source.readInt();
+            if (chunkSize <= 0 || hashLength != digestLength(algorithm) || count != chunkCount(fileSize, chunkSize)) {
+                return null;
+            }
+            // the header fields only vouch for each other, check them against the file before allocating
+            if ((long) count * hashLength != sidecar.length() - HEADER_LENGTH - nameLength) {
+                return null;
+            }
+            byte[][] leaves = new byte[count][];
+            for (int i = 0; i < count; i++) {
+                leaves[i] = source.readByteArray(hashLength);
+            }
+            return new MerkleTree(algorithm, chunkSize, fileSize, lastModified, leaves);
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        } finally {
+            IOUtils.closeQuietly(source);
+        }
+    }
+
+    /**
+     * Write the chunk hashes of this tree to <code>sidecar.
+     *
+     * @param sidecar the file to write, usually {@link #sidecarOf(File)}
+     * @throws IOException if the file can not be written
+     */
+    public void save(File sidecar) throws IOException {
+        File temp = new File(sidecar.getPath() + ".tmp");
+        BufferedSink sink = Okio.buffer(Okio.sink(temp));
+        try {
+            sink.writeInt(MAGIC);
+            sink.writeInt(VERSION);
+            sink.writeByte(algorithm.length());
+            sink.writeUtf8(algorithm);
+            sink.writeInt(chunkSize);
+            sink.writeLong(fileSize);
+            sink.writeLong(lastModified);
+            sink.writeInt(root.length);
+            sink.writeInt(leaves.length);
+            for (byte[] leaf : leaves) {
+                sink.write(leaf);
+            }
+        } finally {
+            IOUtils.closeQuietly(sink);
+        }
+        if (!temp.renameTo(sidecar)) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            throw new IOException("Failed to write " + sidecar);
+        }
+    }
+
+    /**
+     * Hash the chunks of <code>file, reusing the hashes of <code>previous
+     * for the chunks outside of <code>[offset, offset + length) that kept their extent.
+     */
+    private static MerkleTree rehash(File file, final String algorithm, final int chunkSize, MerkleTree previous,
+                                     long offset, long length, Executor executor, int concurrency)
+            throws IOException {
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("Concurrency must be positive, actual: " + concurrency);
+        }
+        // fail fast on unsupported algorithms, rather than once per chunk
+        FileHasher.threadDigest(algorithm);
+
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            long lastModified = file.lastModified();
+            final long size = raf.length();
+            final int count = chunkCount(size, chunkSize);
+            final byte[][] leaves = new byte[count][];
+            final int[] dirty = new int[count];
+            int dirtyCount = 0;
+            for (int i = 0; i < count; i++) {
+                if (previous == null || !previous.canReuse(i, size, offset, length)) {
+                    dirty[dirtyCount++] = i;
+                } else {
+                    leaves[i] = previous.leaves[i];
+                }
+            }
+
+            final FileChannel channel = raf.getChannel();
+            FileHasher.forEach(dirtyCount, executor, concurrency, new FileHasher.IndexedTask() {
+                @Override
+                public void run(int index) throws IOException {
+                    int chunk = dirty[index];
+                    long position = (long) chunk * chunkSize;
+                    leaves[chunk] = hashChunk(channel, position, Math.min(chunkSize, size - position), algorithm);
+                }
+            });
+            return new MerkleTree(algorithm, chunkSize, size, lastModified, leaves);
+        } finally {
+            IOUtils.closeQuietly(raf);
+        }
+    }
+
+    /**
+     * @return true if chunk <code>index, as part of a file of <code>size
+     * bytes modified over <code>[offset, offset + length), still has the hash
+     * recorded in this tree
+     */
+    private boolean canReuse(int index, long size, long offset, long length) {
+        if (index >= leaves.length) {
+            return false;
+        }
+        long start = (long) index * chunkSize;
+        long end = Math.min(start + chunkSize, size);
+        if (end != Math.min(start + chunkSize, fileSize)) {
+            // the chunk grew or shrank with the file
+            return false;
+        }
+        return offset < 0 || offset >= end || offset + length <= start;
+    }
+
+    private static byte[] hashChunk(FileChannel channel, long position, long length, String algorithm)
+            throws IOException {
+        MultiDigest digest = FileHasher.threadDigest(algorithm);
+        byte[] buffer = FileHasher.threadBuffer();
+        digest.update(LEAF_PREFIX, 0, 1);
+        while (length > 0) {
+            // positional reads leave the shared channel position alone
+            int n = channel.read(ByteBuffer.wrap(buffer, 0, (int) Math.min(buffer.length, length)), position);
+            if (n == -1) {
+                throw new EOFException("File shrank while being hashed");
+            }
+            digest.update(buffer, 0, n);
+            position += n;
+            length -= n;
+        }
+        return digest.finish().bytes(algorithm);
+    }
+
+    private static byte[] combine(String algorithm, byte[][] leaves) {
+        MultiDigest digest = FileHasher.threadDigest(algorithm);
+        byte[][] level = leaves;
+        while (level.length > 1) {
+            byte[][] next = new byte[(level.length + 1) / 2][];
+            for (int i = 0; i < next.length; i++) {
+                if (i * 2 + 1 == level.length) {
+                    next[i] = level[i * 2];
+                    continue;
+                }
+                digest.update(NODE_PREFIX, 0, 1);
+                digest.update(level[i * 2], 0, level[i * 2].length);
+                digest.update(level[i * 2 + 1], 0, level[i * 2 + 1].length);
+                next[i] = digest.finish().bytes(algorithm);
+            }
+            level = next;
+        }
+        return level[0];
+    }
+
+    /**
+     * @return the length of the hashes computed by <code>algorithm
+     * @throws IllegalArgumentException if the algorithm is not supported
+     */
+    private static int digestLength(String algorithm) {
+        return FileHasher.hash(new byte[0], algorithm).bytes(algorithm).length;
+    }
+
+    private static int chunkCount(long size, int chunkSize) {
+        long count = Math.max(1, (size + chunkSize - 1) / chunkSize);
+        if (count > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Chunk size too small for " + size + " bytes: " + chunkSize);
+        }
+        return (int) count;
+    }
+}
@@ -0,0 +1,253 @@
+package cn.jony.libutil.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.Checksum;
+
+import okio.Buffer;
+import okio.Sink;
+import okio.Timeout;
+
+/**
+ * Feeds the same bytes to several digests and checksums at once.
+ * <p/>
+ * Any {@link MessageDigest} algorithm can be requested, plus {@link #CRC32}.
+ * Combined with {@link TeeOutputStream}, {@link TeeSource} or {@link TeeSink}
+ * the hashes are computed while the data is copied, so a copy does not need a
+ * second pass to be verified:
+ * <pre>
+ * MultiDigest digest = new MultiDigest(MultiDigest.MD5, MultiDigest.SHA_256);
+ * IOUtils.copyLarge(input, new TeeOutputStream(output, digest.asOutputStream()));
+ * MultiDigest.Result result = digest.finish();
+ * String md5 = result.hex(MultiDigest.MD5);
+ * </pre>
+ * This class is not thread-safe.
+ *
+ * @author jony
+ * @see IOUtils#copyAndDigest(java.io.InputStream, OutputStream, String...)
+ */
+@SuppressWarnings("unused")
+public class MultiDigest {
+    public static final String MD5 = "MD5";
+    public static final String SHA_1 = "SHA-1";
+    public static final String SHA_256 = "SHA-256";
+    /**
+     * The CRC-32 checksum, its result is the 4 byte big-endian checksum value.
+     */
+    public static final String CRC32 = "CRC32";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final char[] HEX_DIGITS_UPPER = "0123456789ABCDEF".toCharArray();
+
+    private final String[] algorithms;
+    private final MessageDigest[] digests;
+    private final Checksum crc32;
+    private long byteCount;
+
+    /**
+     * @param algorithms the algorithms to compute, at least one
+     * @throws IllegalArgumentException if an algorithm is not supported
+     */
+    public MultiDigest(String... algorithms) {
+        if (algorithms == null || algorithms.length == 0) {
+            throw new IllegalArgumentException("Algorithms must not be empty");
+        }
+        this.algorithms = algorithms.clone();
+        this.digests = new MessageDigest[algorithms.length];
+        Checksum checksum = null;
+        for (int i = 0; i < algorithms.length; i++) {
+            if (CRC32.equalsIgnoreCase(algorithms[i])) {
+                checksum = new java.util.zip.CRC32();
+                continue;
+            }
+            try {
+                digests[i] = MessageDigest.getInstance(algorithms[i]);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalArgumentException("Unsupported algorithm: " + algorithms[i], e);
+            }
+        }
+        this.crc32 = checksum;
+    }
+
+    public void update(int b) {
+        for (MessageDigest digest : digests) {
+            if (digest != null) {
+                digest.update((byte) b);
+            }
+        }
+        if (crc32 != null) {
+            crc32.update(b);
+        }
+        byteCount++;
+    }
+
+    public void update(byte[] b, int off, int len) {
+        for (MessageDigest digest : digests) {
+            if (digest != null) {
+                digest.update(b, off, len);
+            }
+        }
+        if (crc32 != null) {
+            crc32.update(b, off, len);
+        }
+        byteCount += len;
+    }
+
+    /**
+     * @return the number of bytes fed so far
+     */
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * Complete the computation and reset this instance for reuse.
+     *
+     * @return the hashes of all bytes fed since the last reset
+     */
+    public Result finish() {
+        Map<String, byte[]> hashes = new LinkedHashMap<>();
+        for (int i = 0; i < algorithms.length; i++) {
+            byte[] hash;
+            if (digests[i] != null) {
+                hash = digests[i].digest();
+            } else {
+                long value = crc32.getValue();
+                hash = new byte[]{(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+            }
+            hashes.put(algorithms[i].toUpperCase(Locale.US), hash);
+        }
+        if (crc32 != null) {
+            crc32.reset();
+        }
+        Result result = new Result(byteCount, hashes);
+        byteCount = 0;
+        return result;
+    }
+
+    /**
+     * @return an output stream feeding everything written to it to this instance
+     */
+    public OutputStream asOutputStream() {
+        return new OutputStream() {
+            @Override
+            public void write(int b) {
+                update(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                update(b, off, len);
+            }
+        };
+    }
+
+    /**
+     * @return a sink feeding everything written to it to this instance
+     */
+    public Sink asSink() {
+        final OutputStream output = asOutputStream();
+        return new Sink() {
+            @Override
+            public void write(Buffer source, long byteCount) throws IOException {
+                source.copyTo(output, 0, byteCount);
+                source.skip(byteCount);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public Timeout timeout() {
+                return Timeout.NONE;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * @return the lower case hex representation of <code>bytes
+     */
+    public static String toHex(byte[] bytes) {
+        return toHex(bytes, false);
+    }
+
+    /**
+     * @param bytes     the bytes to encode
+     * @param upperCase whether to use the digits <code>A-F rather than <code>a-f
+     * @return the hex representation of <code>bytes
+     */
+    public static String toHex(byte[] bytes, boolean upperCase) {
+        char[] digits = upperCase ? HEX_DIGITS_UPPER : HEX_DIGITS;
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = digits[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = digits[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * The hashes of a run of bytes, along with their count.
+     */
+    public static final class Result {
+        private final long byteCount;
+        private final Map<String, byte[]> hashes;
+
+        Result(long byteCount, Map<String, byte[]> hashes) {
+            this.byteCount = byteCount;
+            this.hashes = Collections.unmodifiableMap(hashes);
+        }
+
+        /**
+         * @return the number of bytes hashed
+         */
+        public long getByteCount() {
+            return byteCount;
+        }
+
+        /**
+         * @param algorithm one of the algorithms the digest was created with
+         * @return a copy of the hash, or null if the algorithm was not computed
+         */
+        public byte[] bytes(String algorithm) {
+            byte[] hash = hashes.get(algorithm.toUpperCase(Locale.US));
+            return hash == null ? null : hash.clone();
+        }
+
+        /**
+         * @param algorithm one of the algorithms the digest was created with
+         * @return the lower case hex hash, or null if the algorithm was not computed
+         */
+        public String hex(String algorithm) {
+            byte[] hash = hashes.get(algorithm.toUpperCase(Locale.US));
+            return hash == null ? null : toHex(hash);
+        }
+
+        /**
+         * @return the names of the computed algorithms, in upper case
+         */
+        public Iterable<String> algorithms() {
+            return hashes.keySet();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("Result{byteCount=").append(byteCount);
+            for (Map.Entry<String, byte[]> entry : hashes.entrySet()) {
+                sb.append(", ").append(entry.getKey()).append('=').append(toHex(entry.getValue()));
+            }
+            return sb.append('}').toString();
+        }
+    }
+}
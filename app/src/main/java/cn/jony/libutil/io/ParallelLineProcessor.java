@@ -0,0 +1,248 @@
+package cn.jony.libutil.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Okio;
+import okio.Source;
+
+/**
+ * Processes the lines of a UTF-8 file on several threads.
+ * <p/>
+ * The file is split into byte ranges whose boundaries fall right after a
+ * <code>'\n', so no line is cut in two. Each range is read by its own
+ * {@link Utf8LineReader} on the given executor and folded into its own
+ * accumulator; the accumulators are then combined in file order.
+ * <p/>
+ * Counting lines:
+ * <pre>
+ * long lines = ParallelLineProcessor.process(file, executor, 4,
+ *         new ParallelLineProcessor.LineHandler&lt;long[]&gt;() {
+ *             public long[] init() {
+ *                 return new long[1];
+ *             }
+ *
+ *             public void onLine(long[] count, CharSequence line) {
+ *                 count[0]++;
+ *             }
+ *
+ *             public long[] combine(long[] left, long[] right) {
+ *                 left[0] += right[0];
+ *                 return left;
+ *             }
+ *         })[0];
+ * </pre>
+ * Files using <code>'\r' alone as line terminator are processed as one range.
+ *
+ * @author jony
+ */
+@SuppressWarnings("unused")
+public final class ParallelLineProcessor {
+
+    /**
+     * Folds the lines of one range into an accumulator.
+     *
+     * @param <A> the type of the accumulator
+     */
+    public interface LineHandler<A> {
+        /**
+         * @return a new, empty accumulator for one range
+         */
+        A init();
+
+        /**
+         * Called once per line of a range, from the thread processing that range.
+         *
+         * @param accumulator the accumulator of the range
+         * @param line        the line, only valid until this method returns
+         */
+        void onLine(A accumulator, CharSequence line) throws IOException;
+
+        /**
+         * Merge the accumulators of two adjacent ranges.
+         *
+         * @param left  the accumulator of the earlier range
+         * @param right the accumulator of the later range
+         * @return the merged accumulator
+         */
+        A combine(A left, A right);
+    }
+
+    private ParallelLineProcessor() {
+        throw new AssertionError("No instances");
+    }
+
+    /**
+     * Process the lines of <code>file in one range per available processor.
+     *
+     * @see #process(File, ExecutorService, int, LineHandler)
+     */
+    public static <A> A process(File file, ExecutorService executor, LineHandler<A> handler) throws IOException {
+        return process(file, executor, Runtime.getRuntime().availableProcessors(), handler);
+    }
+
+    /**
+     * Process the lines of <code>file in at most <code>parts ranges.
+     *
+     * @param file     the UTF-8 file to read
+     * @param executor the executor processing the ranges, not null
+     * @param parts    the number of ranges to split the file into
+     * @param handler  the line handler, not null
+     * @return the combined accumulator of all ranges
+     * @throws IOException if an I/O error occurs or a handler fails
+     */
+    public static <A> A process(final File file, ExecutorService executor, int parts, final LineHandler<A> handler)
+            throws IOException {
+        if (parts <= 0) {
+            throw new IllegalArgumentException("Parts must be positive, actual: " + parts);
+        }
+        long[] boundaries = split(file, parts);
+        List<Future<A>> futures = new ArrayList<>();
+        for (int i = 0; i < boundaries.length - 1; i++) {
+            final long start = boundaries[i];
+            final long end = boundaries[i + 1];
+            futures.add(executor.submit(new Callable<A>() {
+                @Override
+                public A call() throws IOException {
+                    return processRange(file, start, end, handler);
+                }
+            }));
+        }
+
+        try {
+            A result = futures.get(0).get();
+            for (int i = 1; i < futures.size(); i++) {
+                result = handler.combine(result, futures.get(i).get());
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while processing " + file);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            for (Future<A> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Split <code>file into at most <code>parts ranges ending right after a line feed.
+     *
+     * @return the sorted range boundaries, starting with 0 and ending with the file size
+     */
+    static long[] split(File file, int parts) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            long size = raf.length();
+            long[] boundaries = new long[parts + 1];
+            int count = 1;
+            byte[] buffer = BufferPool.takeBytes();
+            try {
+                for (int k = 1; k < parts; k++) {
+                    long boundary = nextLineStart(raf, Math.max(size * k / parts, boundaries[count - 1]), size, buffer);
+                    if (boundary > boundaries[count - 1] && boundary < size) {
+                        boundaries[count++] = boundary;
+                    }
+                }
+            } finally {
+                BufferPool.recycle(buffer);
+            }
+            boundaries[count++] = size;
+            long[] result = new long[count];
+            System.arraycopy(boundaries, 0, result, 0, count);
+            return result;
+        } finally {
+            IOUtils.closeQuietly(raf);
+        }
+    }
+
+    /**
+     * @return the offset following the first line feed at or after <code>position - 1,
+     * or <code>size if there is none
+     */
+    private static long nextLineStart(RandomAccessFile raf, long position, long size, byte[] buffer)
+            throws IOException {
+        if (position == 0) {
+            return 0;
+        }
+        long offset = position - 1;
+        raf.seek(offset);
+        int n;
+        while ((n = raf.read(buffer)) > 0) {
+            for (int i = 0; i < n; i++) {
+                if (buffer[i] == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += n;
+        }
+        return size;
+    }
+
+    private static <A> A processRange(File file, long start, long end, final LineHandler<A> handler)
+            throws IOException {
+        FileInputStream input = new FileInputStream(file);
+        try {
+            input.getChannel().position(start);
+            final A accumulator = handler.init();
+            Utf8LineReader reader = new Utf8LineReader(new LimitedSource(Okio.source(input), end - start));
+            reader.forEachLine(new Utf8LineReader.LineHandler() {
+                @Override
+                public boolean onLine(CharSequence line) throws IOException {
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new InterruptedIOException("Line processing cancelled");
+                    }
+                    handler.onLine(accumulator, line);
+                    return true;
+                }
+            });
+            return accumulator;
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    /**
+     * A source returning at most <code>limit bytes of its delegate.
+     */
+    private static class LimitedSource extends ForwardingSource {
+        private long remaining;
+
+        LimitedSource(Source delegate, long limit) {
+            super(delegate);
+            this.remaining = limit;
+        }
+
+        @Override
+        public long read(Buffer sink, long byteCount) throws IOException {
+            if (remaining == 0) {
+                return -1;
+            }
+            long n = super.read(sink, Math.min(byteCount, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+    }
+}
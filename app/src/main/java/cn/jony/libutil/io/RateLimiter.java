@@ -0,0 +1,129 @@
+package cn.jony.libutil.io;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket limiting the number of bytes per second moved through the
+ * streams that share it.
+ * <p/>
+ * The bucket holds at most one second worth of bytes, so short bursts pass
+ * immediately while the long-term rate stays at the configured limit. The
+ * rate can be changed at any time with {@link #setRate(long)}, a rate of 0 or
+ * less disables the limit. Limiters can be shared by name, see {@link #get(String)}.
+ * <p/>
+ * Usage:
+ * <pre>
+ * RateLimiter limiter = RateLimiter.get("background-sync");
+ * limiter.setRate(512 * 1024);
+ * IOUtils.copyLarge(input, output, limiter);
+ * </pre>
+ * Instances are thread-safe.
+ *
+ * @author jony
+ * @see ThrottledInputStream
+ * @see ThrottledOutputStream
+ * @see ThrottledSource
+ * @see ThrottledSink
+ */
+@SuppressWarnings("unused")
+public class RateLimiter {
+    private static final ConcurrentMap<String, RateLimiter> BUDGETS = new ConcurrentHashMap<>();
+
+    private long bytesPerSecond;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    /**
+     * Construct a limiter allowing <code>bytesPerSecond bytes per second.
+     *
+     * @param bytesPerSecond the rate, 0 or less for no limit
+     */
+    public RateLimiter(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+        this.tokens = Math.max(0, bytesPerSecond);
+    }
+
+    /**
+     * Return the limiter of the named budget, creating an unlimited one if it
+     * does not exist yet.
+     *
+     * @param name the name of the budget, not null
+     * @return the limiter shared by every caller using that name
+     */
+    public static RateLimiter get(String name) {
+        RateLimiter limiter = BUDGETS.get(name);
+        if (limiter == null) {
+            RateLimiter created = new RateLimiter(0);
+            limiter = BUDGETS.putIfAbsent(name, created);
+            if (limiter == null) {
+                limiter = created;
+            }
+        }
+        return limiter;
+    }
+
+    /**
+     * @return the current rate in bytes per second, 0 or less if unlimited
+     */
+    public synchronized long getRate() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * @return the most bytes one {@link #acquire(long)} should take, one second
+     * worth at the current rate, or <code>Long.MAX_VALUE if unlimited. The
+     * throttled streams split larger transfers into pieces of this size.
+     */
+    public synchronized long getBurstSize() {
+        return bytesPerSecond > 0 ? bytesPerSecond : Long.MAX_VALUE;
+    }
+
+    /**
+     * Change the rate. Callers blocked in {@link #acquire(long)} keep the wait
+     * computed with the old rate.
+     *
+     * @param bytesPerSecond the new rate, 0 or less for no limit
+     */
+    public synchronized void setRate(long bytesPerSecond) {
+        refill(System.nanoTime());
+        this.bytesPerSecond = bytesPerSecond;
+        this.tokens = Math.min(tokens, Math.max(0, bytesPerSecond));
+    }
+
+    /**
+     * Take <code>bytes tokens from the bucket, blocking as long as
+     * needed to stay within the rate.
+     *
+     * @param bytes the number of bytes about to be transferred
+     * @throws InterruptedIOException if the thread is interrupted while waiting
+     */
+    public void acquire(long bytes) throws InterruptedIOException {
+        long waitNanos;
+        synchronized (this) {
+            if (bytesPerSecond <= 0 || bytes <= 0) {
+                return;
+            }
+            refill(System.nanoTime());
+            tokens -= bytes;
+            waitNanos = tokens < 0 ? (long) (-tokens * 1e9 / bytesPerSecond) : 0;
+        }
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while throttled");
+            }
+        }
+    }
+
+    private void refill(long now) {
+        if (bytesPerSecond > 0) {
+            tokens = Math.min(bytesPerSecond, tokens + (now - lastRefill) * bytesPerSecond / 1e9);
+        }
+        lastRefill = now;
+    }
+}
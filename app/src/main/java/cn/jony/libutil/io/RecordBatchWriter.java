@@ -0,0 +1,170 @@
+package cn.jony.libutil.io;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+
+/**
+ * Collects many small records and writes them to a channel with one
+ * {@link GatheringByteChannel#write(ByteBuffer[], int, int)} call per batch.
+ * <p/>
+ * Records are kept by reference until their batch is written, a batch is
+ * written once it holds <code>maxRecords records or <code>maxBytes
+ * bytes, on {@link #flush()} and on {@link #close()}:
+ * <pre>
+ * RecordBatchWriter writer = new RecordBatchWriter(new FileOutputStream(file).getChannel());
+ * try {
+ *     for (Event event : events) {
+ *         writer.add(event.toBytes());
+ *         writer.add(newline);
+ *     }
+ * } finally {
+ *     writer.close();
+ * }
+ * </pre>
+ * The channel must be in blocking mode. This class is not thread-safe.
+ *
+ * @author jony
+ * @see IOUtils#write(ByteBuffer[], GatheringByteChannel)
+ */
+@SuppressWarnings("unused")
+public class RecordBatchWriter implements Closeable, Flushable {
+    /**
+     * The default maximum number of records per batch, the usual <code>IOV_MAX.
+     */
+    public static final int DEFAULT_MAX_RECORDS = 1024;
+    /**
+     * The default maximum number of bytes per batch.
+     */
+    public static final long DEFAULT_MAX_BYTES = 1024 * 1024;
+
+    private final GatheringByteChannel channel;
+    private final ByteBuffer[] batch;
+    private final long maxBytes;
+    private int count;
+    private long batchBytes;
+    private long written;
+    private boolean closed;
+
+    /**
+     * Construct a writer with {@link #DEFAULT_MAX_RECORDS} and {@link #DEFAULT_MAX_BYTES}.
+     *
+     * @param channel the channel to write to, not null
+     */
+    public RecordBatchWriter(GatheringByteChannel channel) {
+        this(channel, DEFAULT_MAX_RECORDS, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * @param channel    the channel to write to, not null
+     * @param maxRecords the maximum number of records per batch
+     * @param maxBytes   the number of bytes after which a batch is written
+     */
+    public RecordBatchWriter(GatheringByteChannel channel, int maxRecords, long maxBytes) {
+        if (channel == null) {
+            throw new IllegalArgumentException("Channel must not be null");
+        }
+        if (maxRecords <= 0) {
+            throw new IllegalArgumentException("Max records must be positive, actual: " + maxRecords);
+        }
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Max bytes must be positive, actual: " + maxBytes);
+        }
+        this.channel = channel;
+        this.batch = new ByteBuffer[maxRecords];
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Add a record. The array must not be modified until the batch holding it is written.
+     *
+     * @param record the record, not null
+     * @throws IOException if a full batch can not be written
+     */
+    public void add(byte[] record) throws IOException {
+        add(ByteBuffer.wrap(record));
+    }
+
+    /**
+     * Add a record. The array must not be modified until the batch holding it is written.
+     *
+     * @param record the array holding the record, not null
+     * @param offset the index of the first byte of the record
+     * @param length the number of bytes of the record
+     * @throws IOException if a full batch can not be written
+     */
+    public void add(byte[] record, int offset, int length) throws IOException {
+        add(ByteBuffer.wrap(record, offset, length));
+    }
+
+    /**
+     * Add the remaining bytes of <code>record. Its position is advanced
+     * when the batch holding it is written; use {@link ByteBuffer#duplicate()}
+     * to add the same buffer several times.
+     *
+     * @param record the record, not null
+     * @throws IOException if a full batch can not be written
+     */
+    public void add(ByteBuffer record) throws IOException {
+        if (closed) {
+            throw new IOException("RecordBatchWriter is closed");
+        }
+        if (!record.hasRemaining()) {
+            return;
+        }
+        batch[count++] = record;
+        batchBytes += record.remaining();
+        if (count == batch.length || batchBytes >= maxBytes) {
+            writeBatch();
+        }
+    }
+
+    /**
+     * @return the number of bytes written to the channel so far
+     */
+    public long getBytesWritten() {
+        return written;
+    }
+
+    /**
+     * Write the pending records.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void flush() throws IOException {
+        writeBatch();
+    }
+
+    /**
+     * Write the pending records and close the channel.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            writeBatch();
+        } finally {
+            closed = true;
+            channel.close();
+        }
+    }
+
+    private void writeBatch() throws IOException {
+        if (count == 0) {
+            return;
+        }
+        written += IOUtils.write(batch, 0, count, channel);
+        for (int i = 0; i < count; i++) {
+            batch[i] = null;
+        }
+        count = 0;
+        batchBytes = 0;
+    }
+}
@@ -0,0 +1,545 @@
+package cn.jony.libutil.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+
+/**
+ * A hash whose running state can be exported and restored, so a digest over a
+ * growing file can be resumed across processes.
+ * <p/>
+ * MD5, SHA-1 and SHA-256 are implemented here, since the state of a
+ * {@link MessageDigest} can not be exported. CRC-32 uses {@link CRC32} for
+ * every update and combines it with the stored value, as zlib's
+ * <code>crc32_combine does. Any other algorithm falls back to a
+ * {@link MessageDigest}, resumable within the process only.
+ *
+ * @author jony
+ * @see AppendOnlyDigest
+ */
+abstract class ResumableHash {
+
+    /**
+     * @param algorithm a {@link MessageDigest} algorithm or {@link MultiDigest#CRC32}
+     * @return a new hash over no bytes
+     * @throws IllegalArgumentException if the algorithm is not supported
+     */
+    static ResumableHash forAlgorithm(String algorithm) {
+        if (MultiDigest.CRC32.equalsIgnoreCase(algorithm)) {
+            return new Crc32();
+        }
+        if (MultiDigest.MD5.equalsIgnoreCase(algorithm)) {
+            return new Md5();
+        }
+        if (MultiDigest.SHA_1.equalsIgnoreCase(algorithm) || "SHA1".equalsIgnoreCase(algorithm)) {
+            return new Sha1();
+        }
+        if (MultiDigest.SHA_256.equalsIgnoreCase(algorithm) || "SHA256".equalsIgnoreCase(algorithm)) {
+            return new Sha256();
+        }
+        try {
+            return new Fallback(MessageDigest.getInstance(algorithm));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Unsupported algorithm: " + algorithm, e);
+        }
+    }
+
+    abstract void update(byte[] b, int off, int len);
+
+    /**
+     * @return the hash of the bytes fed so far, the state is left as is
+     */
+    abstract byte[] digest();
+
+    abstract void reset();
+
+    /**
+     * @return the number of bytes fed so far, or -1 if this hash does not count them
+     */
+    long byteCount() {
+        return -1;
+    }
+
+    /**
+     * @return false once the state can no longer be continued
+     */
+    boolean canResume() {
+        return true;
+    }
+
+    /**
+     * @return the running state, or null if it can not be exported
+     */
+    abstract byte[] saveState();
+
+    /**
+     * @throws IOException if <code>state was not saved by the same algorithm
+     */
+    abstract void restoreState(byte[] state) throws IOException;
+
+    /**
+     * CRC-32, identical to {@link CRC32}.
+     */
+    private static final class Crc32 extends ResumableHash {
+        private final CRC32 crc = new CRC32();
+        private long value;
+
+        @Override
+        void update(byte[] b, int off, int len) {
+            crc.reset();
+            crc.update(b, off, len);
+            value = combine(value, crc.getValue(), len);
+        }
+
+        @Override
+        byte[] digest() {
+            return new byte[]{(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+        }
+
+        @Override
+        void reset() {
+            value = 0;
+        }
+
+        @Override
+        byte[] saveState() {
+            return ByteBuffer.allocate(8).putLong(value).array();
+        }
+
+        @Override
+        void restoreState(byte[] state) throws IOException {
+            if (state.length != 8) {
+                throw new IOException("Malformed CRC-32 state");
+            }
+            value = ByteBuffer.wrap(state).getLong();
+        }
+
+        /**
+         * @return the CRC-32 of the concatenation of two runs of bytes, given
+         * their CRC-32s and the length of the second one
+         */
+        static long combine(long crc1, long crc2, long len2) {
+            if (len2 <= 0) {
+                return crc1;
+            }
+            long[] even = new long[32];
+            long[] odd = new long[32];
+            // the operator for one zero bit
+            odd[0] = 0xedb88320L;
+            long row = 1;
+            for (int n = 1; n < 32; n++) {
+                odd[n] = row;
+                row <<= 1;
+            }
+            // two zero bits, then four
+            square(even, odd);
+            square(odd, even);
+            // apply len2 zero bytes to crc1, the first square giving one byte
+            do {
+                square(even, odd);
+                if ((len2 & 1) != 0) {
+                    crc1 = times(even, crc1);
+                }
+                len2 >>= 1;
+                if (len2 == 0) {
+                    break;
+                }
+                square(odd, even);
+                if ((len2 & 1) != 0) {
+                    crc1 = times(odd, crc1);
+                }
+                len2 >>= 1;
+            } while (len2 != 0);
+            return crc1 ^ crc2;
+        }
+
+        private static long times(long[] matrix, long vector) {
+            long sum = 0;
+            for (int i = 0; vector != 0; i++, vector >>>= 1) {
+                if ((vector & 1) != 0) {
+                    sum ^= matrix[i];
+                }
+            }
+            return sum;
+        }
+
+        private static void square(long[] square, long[] matrix) {
+            for (int n = 0; n < 32; n++) {
+                square[n] = times(matrix, matrix[n]);
+            }
+        }
+    }
+
+    /**
+     * The Merkle-Damgard structure shared by MD5 and the SHA family: 64 byte
+     * blocks, padding with <code>0x80, zeros and the bit length.
+     */
+    private static abstract class BlockHash extends ResumableHash {
+        private final int[] initial;
+        final int[] h;
+        private final byte[] block = new byte[64];
+        private long count;
+
+        BlockHash(int... initial) {
+            this.initial = initial;
+            this.h = initial.clone();
+        }
+
+        abstract void process(byte[] b, int off);
+
+        /**
+         * @return true for MD5, which stores the length and the hash little-endian
+         */
+        abstract boolean littleEndian();
+
+        abstract BlockHash newInstance();
+
+        @Override
+        void update(byte[] b, int off, int len) {
+            int fill = (int) (count & 63);
+            count += len;
+            if (fill > 0) {
+                int n = Math.min(64 - fill, len);
+                System.arraycopy(b, off, block, fill, n);
+                off += n;
+                len -= n;
+                if (fill + n < 64) {
+                    return;
+                }
+                process(block, 0);
+            }
+            while (len >= 64) {
+                process(b, off);
+                off += 64;
+                len -= 64;
+            }
+            if (len > 0) {
+                System.arraycopy(b, off, block, 0, len);
+            }
+        }
+
+        @Override
+        byte[] digest() {
+            BlockHash copy = newInstance();
+            System.arraycopy(h, 0, copy.h, 0, h.length);
+            System.arraycopy(block, 0, copy.block, 0, 64);
+            copy.count = count;
+            return copy.finish();
+        }
+
+        private byte[] finish() {
+            long bits = count << 3;
+            int fill = (int) (count & 63);
+            byte[] padding = new byte[(fill < 56 ? 56 : 120) - fill + 8];
+            padding[0] = (byte) 0x80;
+            for (int i = 0; i < 8; i++) {
+                int shift = littleEndian() ? i * 8 : (7 - i) * 8;
+                padding[padding.length - 8 + i] = (byte) (bits >>> shift);
+            }
+            update(padding, 0, padding.length);
+            byte[] out = new byte[h.length * 4];
+            for (int i = 0; i < h.length; i++) {
+                for (int j = 0; j < 4; j++) {
+                    int shift = littleEndian() ? j * 8 : (3 - j) * 8;
+                    out[i * 4 + j] = (byte) (h[i] >>> shift);
+                }
+            }
+            return out;
+        }
+
+        @Override
+        void reset() {
+            System.arraycopy(initial, 0, h, 0, h.length);
+            count = 0;
+        }
+
+        @Override
+        long byteCount() {
+            return count;
+        }
+
+        @Override
+        byte[] saveState() {
+            int fill = (int) (count & 63);
+            ByteBuffer state = ByteBuffer.allocate(8 + h.length * 4 + fill);
+            state.putLong(count);
+            for (int word : h) {
+                state.putInt(word);
+            }
+            state.put(block, 0, fill);
+            return state.array();
+        }
+
+        @Override
+        void restoreState(byte[] state) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(state);
+            if (state.length < 8 + h.length * 4) {
+                throw new IOException("Malformed hash state");
+            }
+            long restored = buffer.getLong();
+            if (restored < 0 || state.length != 8 + h.length * 4 + (int) (restored & 63)) {
+                throw new IOException("Malformed hash state");
+            }
+            count = restored;
+            for (int i = 0; i < h.length; i++) {
+                h[i] = buffer.getInt();
+            }
+            buffer.get(block, 0, (int) (count & 63));
+        }
+
+        static int bigEndianInt(byte[] b, int off) {
+            return (b[off] << 24) | ((b[off + 1] & 0xff) << 16) | ((b[off + 2] & 0xff) << 8) | (b[off + 3] & 0xff);
+        }
+    }
+
+    private static final class Md5 extends BlockHash {
+        private static final int[] S = {
+                7, 12, 17, 22, 5, 9, 14, 20, 4, 11, 16, 23, 6, 10, 15, 21};
+        private static final int[] K = new int[64];
+
+        static {
+            for (int i = 0; i < 64; i++) {
+                K[i] = (int) (long) (Math.abs(Math.sin(i + 1)) * 4294967296.0);
+            }
+        }
+
+        private final int[] x = new int[16];
+
+        Md5() {
+            super(0x67452301, 0xefcdab89, 0x98badcfe, 0x10325476);
+        }
+
+        @Override
+        boolean littleEndian() {
+            return true;
+        }
+
+        @Override
+        BlockHash newInstance() {
+            return new Md5();
+        }
+
+        @Override
+        void process(byte[] b, int off) {
+            for (int i = 0; i < 16; i++) {
+                int p = off + i * 4;
+                x[i] = (b[p] & 0xff) | ((b[p + 1] & 0xff) << 8) | ((b[p + 2] & 0xff) << 16) | (b[p + 3] << 24);
+            }
+            int a = h[0];
+            int bb = h[1];
+            int c = h[2];
+            int d = h[3];
+            for (int i = 0; i < 64; i++) {
+                int f;
+                int g;
+                int round = i >>> 4;
+                if (round == 0) {
+                    f = (bb & c) | (~bb & d);
+                    g = i;
+                } else if (round == 1) {
+                    f = (d & bb) | (~d & c);
+                    g = (5 * i + 1) & 15;
+                } else if (round == 2) {
+                    f = bb ^ c ^ d;
+                    g = (3 * i + 5) & 15;
+                } else {
+                    f = c ^ (bb | ~d);
+                    g = (7 * i) & 15;
+                }
+                int temp = d;
+                d = c;
+                c = bb;
+                bb = bb + Integer.rotateLeft(a + f + K[i] + x[g], S[(round << 2) | (i & 3)]);
+                a = temp;
+            }
+            h[0] += a;
+            h[1] += bb;
+            h[2] += c;
+            h[3] += d;
+        }
+    }
+
+    private static final class Sha1 extends BlockHash {
+        private final int[] w = new int[80];
+
+        Sha1() {
+            super(0x67452301, 0xefcdab89, 0x98badcfe, 0x10325476, 0xc3d2e1f0);
+        }
+
+        @Override
+        boolean littleEndian() {
+            return false;
+        }
+
+        @Override
+        BlockHash newInstance() {
+            return new Sha1();
+        }
+
+        @Override
+        void process(byte[] b, int off) {
+            for (int i = 0; i < 16; i++) {
+                w[i] = bigEndianInt(b, off + i * 4);
+            }
+            for (int i = 16; i < 80; i++) {
+                w[i] = Integer.rotateLeft(w[i - 3] ^ w[i - 8] ^ w[i - 14] ^ w[i - 16], 1);
+            }
+            int a = h[0];
+            int bb = h[1];
+            int c = h[2];
+            int d = h[3];
+            int e = h[4];
+            for (int i = 0; i < 80; i++) {
+                int f;
+                int k;
+                if (i < 20) {
+                    f = (bb & c) | (~bb & d);
+                    k = 0x5a827999;
+                } else if (i < 40) {
+                    f = bb ^ c ^ d;
+                    k = 0x6ed9eba1;
+                } else if (i < 60) {
+                    f = (bb & c) | (bb & d) | (c & d);
+                    k = 0x8f1bbcdc;
+                } else {
+                    f = bb ^ c ^ d;
+                    k = 0xca62c1d6;
+                }
+                int temp = Integer.rotateLeft(a, 5) + f + e + k + w[i];
+                e = d;
+                d = c;
+                c = Integer.rotateLeft(bb, 30);
+                bb = a;
+                a = temp;
+            }
+            h[0] += a;
+            h[1] += bb;
+            h[2] += c;
+            h[3] += d;
+            h[4] += e;
+        }
+    }
+
+    private static final class Sha256 extends BlockHash {
+        private static final int[] K = {
+                0x428a2f98, 0x71374491, 0xb5c0fbcf, 0xe9b5dba5, 0x3956c25b, 0x59f111f1, 0x923f82a4, 0xab1c5ed5,
+                0xd807aa98, 0x12835b01, 0x243185be, 0x550c7dc3, 0x72be5d74, 0x80deb1fe, 0x9bdc06a7, 0xc19bf174,
+                0xe49b69c1, 0xefbe4786, 0x0fc19dc6, 0x240ca1cc, 0x2de92c6f, 0x4a7484aa, 0x5cb0a9dc, 0x76f988da,
+                0x983e5152, 0xa831c66d, 0xb00327c8, 0xbf597fc7, 0xc6e00bf3, 0xd5a79147, 0x06ca6351, 0x14292967,
+                0x27b70a85, 0x2e1b2138, 0x4d2c6dfc, 0x53380d13, 0x650a7354, 0x766a0abb, 0x81c2c92e, 0x92722c85,
+                0xa2bfe8a1, 0xa81a664b, 0xc24b8b70, 0xc76c51a3, 0xd192e819, 0xd6990624, 0xf40e3585, 0x106aa070,
+                0x19a4c116, 0x1e376c08, 0x2748774c, 0x34b0bcb5, 0x391c0cb3, 0x4ed8aa4a, 0x5b9cca4f, 0x682e6ff3,
+                0x748f82ee, 0x78a5636f, 0x84c87814, 0x8cc70208, 0x90befffa, 0xa4506ceb, 0xbef9a3f7, 0xc67178f2};
+
+        private final int[] w = new int[64];
+
+        Sha256() {
+            super(0x6a09e667, 0xbb67ae85, 0x3c6ef372, 0xa54ff53a, 0x510e527f, 0x9b05688c, 0x1f83d9ab, 0x5be0cd19);
+        }
+
+        @Override
+        boolean littleEndian() {
+            return false;
+        }
+
+        @Override
+        BlockHash newInstance() {
+            return new Sha256();
+        }
+
+        @Override
+        void process(byte[] b, int off) {
+            for (int i = 0; i < 16; i++) {
+                w[i] = bigEndianInt(b, off + i * 4);
+            }
+            for (int i = 16; i < 64; i++) {
+                int s0 = Integer.rotateRight(w[i - 15], 7) ^ Integer.rotateRight(w[i - 15], 18) ^ (w[i - 15] >>> 3);
+                int s1 = Integer.rotateRight(w[i - 2], 17) ^ Integer.rotateRight(w[i - 2], 19) ^ (w[i - 2] >>> 10);
+                w[i] = w[i - 16] + s0 + w[i - 7] + s1;
+            }
+            int a = h[0];
+            int bb = h[1];
+            int c = h[2];
+            int d = h[3];
+            int e = h[4];
+            int f = h[5];
+            int g = h[6];
+            int hh = h[7];
+            for (int i = 0; i < 64; i++) {
+                int s1 = Integer.rotateRight(e, 6) ^ Integer.rotateRight(e, 11) ^ Integer.rotateRight(e, 25);
+                int ch = (e & f) ^ (~e & g);
+                int t1 = hh + s1 + ch + K[i] + w[i];
+                int s0 = Integer.rotateRight(a, 2) ^ Integer.rotateRight(a, 13) ^ Integer.rotateRight(a, 22);
+                int maj = (a & bb) ^ (a & c) ^ (bb & c);
+                int t2 = s0 + maj;
+                hh = g;
+                g = f;
+                f = e;
+                e = d + t1;
+                d = c;
+                c = bb;
+                bb = a;
+                a = t1 + t2;
+            }
+            h[0] += a;
+            h[1] += bb;
+            h[2] += c;
+            h[3] += d;
+            h[4] += e;
+            h[5] += f;
+            h[6] += g;
+            h[7] += hh;
+        }
+    }
+
+    /**
+     * Any other algorithm, resumable within the process by cloning the digest.
+     */
+    private static final class Fallback extends ResumableHash {
+        private final MessageDigest digest;
+        private boolean broken;
+
+        Fallback(MessageDigest digest) {
+            this.digest = digest;
+        }
+
+        @Override
+        void update(byte[] b, int off, int len) {
+            digest.update(b, off, len);
+        }
+
+        @Override
+        byte[] digest() {
+            try {
+                return ((MessageDigest) digest.clone()).digest();
+            } catch (CloneNotSupportedException e) {
+                // the provider can not copy its state, the digest resets
+                broken = true;
+                return digest.digest();
+            }
+        }
+
+        @Override
+        void reset() {
+            digest.reset();
+            broken = false;
+        }
+
+        @Override
+        boolean canResume() {
+            return !broken;
+        }
+
+        @Override
+        byte[] saveState() {
+            return null;
+        }
+
+        @Override
+        void restoreState(byte[] state) throws IOException {
+            throw new IOException("State of " + digest.getAlgorithm() + " can not be restored");
+        }
+    }
+}
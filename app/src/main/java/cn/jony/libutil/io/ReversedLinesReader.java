@@ -0,0 +1,241 @@
+package cn.jony.libutil.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static cn.jony.libutil.Constants.UTF_8;
+
+/**
+ * Reads the lines of a UTF-8 file from the last one to the first.
+ * <p/>
+ * The file is read backwards in fixed-size blocks, so the cost of reading the
+ * last lines grows with the size of those lines and not with the size of the
+ * file. Lines are split at <code>'\n', <code>'\r' and <code>"\r\n"
+ * like {@link java.io.BufferedReader#readLine()}; since all of them are single
+ * byte characters that never occur inside a multi-byte UTF-8 sequence, lines are
+ * cut at the byte level and decoded whole.
+ * <p/>
+ * Usage:
+ * <pre>
+ * List&lt;String&gt; last = ReversedLinesReader.tail(file, 100);
+ * </pre>
+ * This class is not thread-safe.
+ *
+ * @author jony
+ */
+@SuppressWarnings("unused")
+public class ReversedLinesReader implements Closeable, Iterator<String> {
+    /**
+     * The default number of bytes read backwards at once.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 4;
+
+    private final RandomAccessFile file;
+    private final Charset charset = Charset.forName(UTF_8);
+    private final int blockSize;
+
+    /**
+     * The bytes read but not returned yet, <code>pending[0, pendingLength)
+     * precedes the file content after <code>blockStart.
+     */
+    private byte[] pending;
+    private int pendingLength;
+    private long blockStart;
+    private boolean started;
+    private boolean finished;
+    private String cachedLine;
+
+    /**
+     * Construct a reader using {@link #DEFAULT_BLOCK_SIZE}.
+     *
+     * @param file the UTF-8 file to read
+     * @throws IOException if the file can not be opened
+     */
+    public ReversedLinesReader(File file) throws IOException {
+        this(file, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param file      the UTF-8 file to read
+     * @param blockSize the number of bytes read backwards at once
+     * @throws IOException if the file can not be opened
+     */
+    public ReversedLinesReader(File file, int blockSize) throws IOException {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive, actual: " + blockSize);
+        }
+        this.file = new RandomAccessFile(file, "r");
+        this.blockSize = blockSize;
+        this.blockStart = this.file.length();
+        this.pending = new byte[blockSize];
+    }
+
+    /**
+     * Return the last <code>n lines of <code>file, in file order.
+     *
+     * @param file the UTF-8 file to read
+     * @param n    the maximum number of lines to return
+     * @return at most <code>n lines, the last element being the last line of the file
+     * @throws IOException if an I/O error occurs
+     */
+    public static List<String> tail(File file, int n) throws IOException {
+        List<String> lines = new ArrayList<>(Math.max(0, Math.min(n, 1024)));
+        ReversedLinesReader reader = new ReversedLinesReader(file);
+        try {
+            String line;
+            while (lines.size() < n && (line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+        Collections.reverse(lines);
+        return lines;
+    }
+
+    /**
+     * Read the line preceding the one returned by the previous call.
+     *
+     * @return the line without its terminator, or null once the first line of the file was returned
+     * @throws IOException if an I/O error occurs
+     */
+    public String readLine() throws IOException {
+        if (cachedLine != null) {
+            String line = cachedLine;
+            cachedLine = null;
+            return line;
+        }
+        if (finished) {
+            return null;
+        }
+        if (!started) {
+            started = true;
+            if (blockStart == 0) {
+                finished = true;
+                return null;
+            }
+            skipTrailingTerminator();
+        }
+
+        // bytes after scanFrom are known not to contain a terminator
+        int scanFrom = pendingLength - 1;
+        while (true) {
+            int index = lastTerminator(scanFrom);
+            if (index == 0 && pending[0] == '\n' && blockStart > 0) {
+                // the '\r' of a "\r\n" pair may be in the previous block
+                scanFrom = loadBlock();
+                continue;
+            }
+            if (index >= 0) {
+                String line = new String(pending, index + 1, pendingLength - index - 1, charset);
+                pendingLength = index;
+                if (pending[index] == '\n' && index > 0 && pending[index - 1] == '\r') {
+                    pendingLength--;
+                }
+                return line;
+            }
+            if (blockStart == 0) {
+                finished = true;
+                return new String(pending, 0, pendingLength, charset);
+            }
+            scanFrom = loadBlock() - 1;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (cachedLine == null) {
+            try {
+                cachedLine = readLine();
+            } catch (IOException e) {
+                close();
+                throw new IllegalStateException(e);
+            }
+        }
+        return cachedLine != null;
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more lines");
+        }
+        String line = cachedLine;
+        cachedLine = null;
+        return line;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Remove unsupported on ReversedLinesReader");
+    }
+
+    /**
+     * Close the underlying file.
+     */
+    @Override
+    public void close() {
+        IOUtils.closeQuietly(file);
+        pending = null;
+        cachedLine = null;
+    }
+
+    /**
+     * A terminator at the very end of the file does not start an empty last line.
+     */
+    private void skipTrailingTerminator() throws IOException {
+        while (pendingLength < 2 && blockStart > 0) {
+            loadBlock();
+        }
+        if (pendingLength > 0) {
+            byte last = pending[pendingLength - 1];
+            if (last == '\n') {
+                pendingLength--;
+                if (pendingLength > 0 && pending[pendingLength - 1] == '\r') {
+                    pendingLength--;
+                }
+            } else if (last == '\r') {
+                pendingLength--;
+            }
+        }
+    }
+
+    private int lastTerminator(int from) {
+        for (int i = from; i >= 0; i--) {
+            byte b = pending[i];
+            if (b == '\n' || b == '\r') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Prepend the block preceding <code>blockStart to the pending bytes.
+     *
+     * @return the number of bytes prepended
+     */
+    private int loadBlock() throws IOException {
+        int length = (int) Math.min(blockSize, blockStart);
+        if (pending.length < pendingLength + length) {
+            byte[] grown = new byte[Math.max(pendingLength + length, pending.length * 2)];
+            System.arraycopy(pending, 0, grown, length, pendingLength);
+            pending = grown;
+        } else {
+            System.arraycopy(pending, 0, pending, length, pendingLength);
+        }
+        blockStart -= length;
+        file.seek(blockStart);
+        file.readFully(pending, 0, length);
+        pendingLength += length;
+        return length;
+    }
+}
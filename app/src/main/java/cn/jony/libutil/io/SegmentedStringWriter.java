@@ -0,0 +1,264 @@
+package cn.jony.libutil.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link Writer} implementation that outputs to a chain of fixed-size char
+ * chunks taken from {@link BufferPool}.
+ * <p/>
+ * Unlike {@link StringBuilderWriter}, growing never copies what was written
+ * before: a new chunk is simply added to the chain. The content can be read
+ * in place through {@link #getContent()}, or streamed chunk by chunk with
+ * {@link #writeTo(Writer)} and {@link #writeTo(OutputStream, Charset)}, so
+ * large outputs never need to be flattened into one <code>String.
+ * <p/>
+ * {@link #reset()} empties the writer but keeps its chunks for the next
+ * content, so a reused writer takes nothing from the pool once it has grown
+ * to its working size; {@link BufferPool} only keeps a few buffers, and would
+ * drop most chunks of a large writer. {@link #release()} hands the chunks
+ * back to the pool when the writer is no longer needed:
+ * <pre>
+ * SegmentedStringWriter writer = new SegmentedStringWriter();
+ * try {
+ *     for (Map.Entry&lt;String, String&gt; entry : map.entrySet()) {
+ *         writer.reset();
+ *         writer.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+ *         writer.writeTo(output, charset);
+ *     }
+ * } finally {
+ *     writer.release();
+ * }
+ * </pre>
+ * This class is not thread-safe.
+ *
+ * @author jony
+ * @see StringBuilderWriter
+ */
+@SuppressWarnings("unused")
+public class SegmentedStringWriter extends Writer {
+    private static final int CHUNK_SIZE = BufferPool.BUFFER_SIZE;
+
+    private final List<char[]> chunks = new ArrayList<>();
+    private final Content content = new Content();
+    private int count;
+
+    @Override
+    public void write(int c) {
+        char[] chunk = currentChunk();
+        chunk[count % CHUNK_SIZE] = (char) c;
+        count++;
+    }
+
+    @Override
+    public void write(char[] value, int offset, int length) {
+        if (value == null) {
+            return;
+        }
+        if (offset < 0 || length < 0 || offset + length > value.length) {
+            throw new IndexOutOfBoundsException("offset=" + offset + " length=" + length + " size=" + value.length);
+        }
+        while (length > 0) {
+            char[] chunk = currentChunk();
+            int position = count % CHUNK_SIZE;
+            int n = Math.min(length, CHUNK_SIZE - position);
+            System.arraycopy(value, offset, chunk, position, n);
+            offset += n;
+            length -= n;
+            count += n;
+        }
+    }
+
+    @Override
+    public void write(String value) {
+        if (value != null) {
+            write(value, 0, value.length());
+        }
+    }
+
+    @Override
+    public void write(String value, int offset, int length) {
+        if (value == null) {
+            return;
+        }
+        if (offset < 0 || length < 0 || offset + length > value.length()) {
+            throw new IndexOutOfBoundsException("offset=" + offset + " length=" + length + " size=" + value.length());
+        }
+        while (length > 0) {
+            char[] chunk = currentChunk();
+            int position = count % CHUNK_SIZE;
+            int n = Math.min(length, CHUNK_SIZE - position);
+            value.getChars(offset, offset + n, chunk, position);
+            offset += n;
+            length -= n;
+            count += n;
+        }
+    }
+
+    @Override
+    public Writer append(char value) {
+        write(value);
+        return this;
+    }
+
+    @Override
+    public Writer append(CharSequence value) {
+        return append(value, 0, value == null ? 4 : value.length());
+    }
+
+    @Override
+    public Writer append(CharSequence value, int start, int end) {
+        if (value == null) {
+            value = "null";
+        }
+        if (value instanceof String) {
+            write((String) value, start, end - start);
+            return this;
+        }
+        for (int i = start; i < end; i++) {
+            write(value.charAt(i));
+        }
+        return this;
+    }
+
+    /**
+     * Flushing this writer has no effect.
+     */
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * Closing this writer has no effect, call {@link #release()} to release the chunks.
+     */
+    @Override
+    public void close() {
+    }
+
+    /**
+     * @return the number of chars written
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Return a live view of the content. The view reflects later writes and is
+     * emptied by {@link #reset()} and {@link #release()}.
+     *
+     * @return the content, not flattened
+     */
+    public CharSequence getContent() {
+        return content;
+    }
+
+    /**
+     * Write the whole content to <code>output, one chunk at a time.
+     *
+     * @param output the writer to write to, not closed
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeTo(Writer output) throws IOException {
+        int remaining = count;
+        for (int i = 0; remaining > 0; i++) {
+            int n = Math.min(remaining, CHUNK_SIZE);
+            output.write(chunks.get(i), 0, n);
+            remaining -= n;
+        }
+    }
+
+    /**
+     * Encode the whole content to <code>output, one chunk at a time.
+     *
+     * @param output  the stream to write to, flushed but not closed
+     * @param charset the charset to use, null means platform default
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeTo(OutputStream output, Charset charset) throws IOException {
+        Writer writer = new OutputStreamWriter(output, charset == null ? Charset.defaultCharset() : charset);
+        writeTo(writer);
+        writer.flush();
+    }
+
+    /**
+     * Discard the content, keeping the chunks for the next writes.
+     */
+    public void reset() {
+        count = 0;
+    }
+
+    /**
+     * Discard the content and return the chunks to {@link BufferPool}.
+     */
+    public void release() {
+        for (char[] chunk : chunks) {
+            BufferPool.recycle(chunk);
+        }
+        chunks.clear();
+        count = 0;
+    }
+
+    /**
+     * @return the content as a single <code>String
+     */
+    @Override
+    public String toString() {
+        return content.toString();
+    }
+
+    private char[] currentChunk() {
+        int index = count / CHUNK_SIZE;
+        if (index == chunks.size()) {
+            chunks.add(BufferPool.takeChars());
+        }
+        return chunks.get(index);
+    }
+
+    private void getChars(int start, int end, char[] dest, int offset) {
+        while (start < end) {
+            int position = start % CHUNK_SIZE;
+            int n = Math.min(end - start, CHUNK_SIZE - position);
+            System.arraycopy(chunks.get(start / CHUNK_SIZE), position, dest, offset, n);
+            start += n;
+            offset += n;
+        }
+    }
+
+    /**
+     * The view returned by {@link #getContent()}.
+     */
+    private class Content implements CharSequence {
+        @Override
+        public int length() {
+            return count;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= count) {
+                throw new IndexOutOfBoundsException("index=" + index + " length=" + count);
+            }
+            return chunks.get(index / CHUNK_SIZE)[index % CHUNK_SIZE];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > count || start > end) {
+                throw new IndexOutOfBoundsException("start=" + start + " end=" + end + " length=" + count);
+            }
+            char[] chars = new char[end - start];
+            getChars(start, end, chars, 0);
+            return new String(chars);
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, count).toString();
+        }
+    }
+}
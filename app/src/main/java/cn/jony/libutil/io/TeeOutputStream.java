@@ -0,0 +1,71 @@
+package cn.jony.libutil.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An output stream writing everything to several streams.
+ * <p/>
+ * Writes go to the streams in the order they were given. {@link #close()}
+ * closes all of them, even if one fails, and rethrows the first failure.
+ *
+ * @author jony
+ * @see MultiDigest#asOutputStream()
+ */
+@SuppressWarnings("unused")
+public class TeeOutputStream extends OutputStream {
+    private final OutputStream[] outputs;
+
+    /**
+     * @param outputs the streams to write to, at least one
+     */
+    public TeeOutputStream(OutputStream... outputs) {
+        if (outputs == null || outputs.length == 0) {
+            throw new IllegalArgumentException("Outputs must not be empty");
+        }
+        for (OutputStream output : outputs) {
+            if (output == null) {
+                throw new IllegalArgumentException("OutputStream must not be null");
+            }
+        }
+        this.outputs = outputs.clone();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        for (OutputStream output : outputs) {
+            output.write(b);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        for (OutputStream output : outputs) {
+            output.write(b, off, len);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        for (OutputStream output : outputs) {
+            output.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (OutputStream output : outputs) {
+            try {
+                output.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package cn.jony.libutil.io;
+
+import java.io.IOException;
+
+import okio.Buffer;
+import okio.Sink;
+import okio.Timeout;
+
+/**
+ * A sink writing everything to several sinks.
+ * <p/>
+ * Every sink but the last one receives a copy of the written segments, which
+ * okio shares rather than copies; the last one receives the original bytes.
+ * {@link #close()} closes all of them, even if one fails, and rethrows the
+ * first failure.
+ *
+ * @author jony
+ * @see MultiDigest#asSink()
+ */
+@SuppressWarnings("unused")
+public class TeeSink implements Sink {
+    private final Sink[] sinks;
+
+    /**
+     * @param sinks the sinks to write to, at least one
+     */
+    public TeeSink(Sink... sinks) {
+        if (sinks == null || sinks.length == 0) {
+            throw new IllegalArgumentException("Sinks must not be empty");
+        }
+        for (Sink sink : sinks) {
+            if (sink == null) {
+                throw new IllegalArgumentException("Sink must not be null");
+            }
+        }
+        this.sinks = sinks.clone();
+    }
+
+    @Override
+    public void write(Buffer source, long byteCount) throws IOException {
+        for (int i = 0; i < sinks.length - 1; i++) {
+            Buffer copy = new Buffer();
+            source.copyTo(copy, 0, byteCount);
+            sinks[i].write(copy, byteCount);
+        }
+        sinks[sinks.length - 1].write(source, byteCount);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        for (Sink sink : sinks) {
+            sink.flush();
+        }
+    }
+
+    /**
+     * @return the timeout of the first sink
+     */
+    @Override
+    public Timeout timeout() {
+        return sinks[0].timeout();
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (Sink sink : sinks) {
+            try {
+                sink.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
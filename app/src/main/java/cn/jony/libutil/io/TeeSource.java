@@ -0,0 +1,78 @@
+package cn.jony.libutil.io;
+
+import java.io.IOException;
+
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Sink;
+import okio.Source;
+
+/**
+ * A source handing a copy of everything read from it to one or more sinks.
+ * <p/>
+ * The branches see exactly the bytes the caller has read, in the same order,
+ * so reading the source to its end also fills the branches:
+ * <pre>
+ * MultiDigest digest = new MultiDigest(MultiDigest.SHA_256);
+ * BufferedSource source = Okio.buffer(new TeeSource(Okio.source(file), digest.asSink()));
+ * </pre>
+ * Closing the source closes the branches as well.
+ *
+ * @author jony
+ */
+@SuppressWarnings("unused")
+public class TeeSource extends ForwardingSource {
+    private final Sink[] branches;
+
+    /**
+     * @param source   the source to read from, not null
+     * @param branches the sinks receiving a copy of the bytes read, at least one
+     */
+    public TeeSource(Source source, Sink... branches) {
+        super(source);
+        if (branches == null || branches.length == 0) {
+            throw new IllegalArgumentException("Branches must not be empty");
+        }
+        for (Sink branch : branches) {
+            if (branch == null) {
+                throw new IllegalArgumentException("Sink must not be null");
+            }
+        }
+        this.branches = branches.clone();
+    }
+
+    @Override
+    public long read(Buffer sink, long byteCount) throws IOException {
+        long n = super.read(sink, byteCount);
+        if (n > 0) {
+            for (Sink branch : branches) {
+                Buffer copy = new Buffer();
+                sink.copyTo(copy, sink.size() - n, n);
+                branch.write(copy, n);
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        try {
+            super.close();
+        } catch (IOException e) {
+            failure = e;
+        }
+        for (Sink branch : branches) {
+            try {
+                branch.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package cn.jony.libutil.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An {@link InputStream} whose reads are paced by a {@link RateLimiter}.
+ *
+ * @author jony
+ */
+public class ThrottledInputStream extends FilterInputStream {
+    private final RateLimiter limiter;
+
+    /**
+     * @param in      the stream to read from
+     * @param limiter the limiter to pace the reads with, not null
+     */
+    public ThrottledInputStream(InputStream in, RateLimiter limiter) {
+        super(in);
+        if (limiter == null) {
+            throw new IllegalArgumentException("RateLimiter must not be null");
+        }
+        this.limiter = limiter;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b != -1) {
+            limiter.acquire(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        // a read is paced after the fact, keep it within one burst
+        int n = in.read(b, off, (int) Math.min(len, limiter.getBurstSize()));
+        if (n > 0) {
+            limiter.acquire(n);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = in.skip(n);
+        limiter.acquire(skipped);
+        return skipped;
+    }
+}
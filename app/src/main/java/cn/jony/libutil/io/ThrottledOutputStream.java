@@ -0,0 +1,44 @@
+package cn.jony.libutil.io;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An {@link OutputStream} whose writes are paced by a {@link RateLimiter}.
+ *
+ * @author jony
+ */
+public class ThrottledOutputStream extends FilterOutputStream {
+    private final RateLimiter limiter;
+
+    /**
+     * @param out     the stream to write to
+     * @param limiter the limiter to pace the writes with, not null
+     */
+    public ThrottledOutputStream(OutputStream out, RateLimiter limiter) {
+        super(out);
+        if (limiter == null) {
+            throw new IllegalArgumentException("RateLimiter must not be null");
+        }
+        this.limiter = limiter;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        limiter.acquire(1);
+        out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        // pace large writes piece by piece rather than in one burst
+        while (len > 0) {
+            int n = (int) Math.min(len, limiter.getBurstSize());
+            limiter.acquire(n);
+            out.write(b, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+}
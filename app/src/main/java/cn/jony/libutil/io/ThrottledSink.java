@@ -0,0 +1,39 @@
+package cn.jony.libutil.io;
+
+import java.io.IOException;
+
+import okio.Buffer;
+import okio.ForwardingSink;
+import okio.Sink;
+
+/**
+ * A {@link Sink} whose writes are paced by a {@link RateLimiter}.
+ *
+ * @author jony
+ */
+public class ThrottledSink extends ForwardingSink {
+    private final RateLimiter limiter;
+
+    /**
+     * @param delegate the sink to write to
+     * @param limiter  the limiter to pace the writes with, not null
+     */
+    public ThrottledSink(Sink delegate, RateLimiter limiter) {
+        super(delegate);
+        if (limiter == null) {
+            throw new IllegalArgumentException("RateLimiter must not be null");
+        }
+        this.limiter = limiter;
+    }
+
+    @Override
+    public void write(Buffer source, long byteCount) throws IOException {
+        // pace large writes piece by piece rather than in one burst
+        while (byteCount > 0) {
+            long n = Math.min(byteCount, limiter.getBurstSize());
+            limiter.acquire(n);
+            super.write(source, n);
+            byteCount -= n;
+        }
+    }
+}
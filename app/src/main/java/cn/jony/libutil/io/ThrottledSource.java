@@ -0,0 +1,38 @@
+package cn.jony.libutil.io;
+
+import java.io.IOException;
+
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Source;
+
+/**
+ * A {@link Source} whose reads are paced by a {@link RateLimiter}.
+ *
+ * @author jony
+ */
+public class ThrottledSource extends ForwardingSource {
+    private final RateLimiter limiter;
+
+    /**
+     * @param delegate the source to read from
+     * @param limiter  the limiter to pace the reads with, not null
+     */
+    public ThrottledSource(Source delegate, RateLimiter limiter) {
+        super(delegate);
+        if (limiter == null) {
+            throw new IllegalArgumentException("RateLimiter must not be null");
+        }
+        this.limiter = limiter;
+    }
+
+    @Override
+    public long read(Buffer sink, long byteCount) throws IOException {
+        // a read is paced after the fact, keep it within one burst
+        long n = super.read(sink, Math.min(byteCount, limiter.getBurstSize()));
+        if (n > 0) {
+            limiter.acquire(n);
+        }
+        return n;
+    }
+}
@@ -0,0 +1,237 @@
+package cn.jony.libutil.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+import okio.BufferedSource;
+import okio.ByteString;
+import okio.Okio;
+import okio.Source;
+
+import static cn.jony.libutil.Constants.UTF_8;
+
+/**
+ * Reads UTF-8 encoded lines by splitting the input at the byte level.
+ * <p/>
+ * Line terminators are found with {@link BufferedSource#indexOfElement(ByteString)}
+ * on the raw bytes, and each line is decoded exactly once, straight from the
+ * okio buffer. A line is terminated by <code>'\n', <code>'\r' or
+ * <code>"\r\n", like {@link java.io.BufferedReader#readLine()}; the
+ * terminator is not part of the line. Malformed input is replaced with
+ * <code>U+FFFD, like {@link java.io.InputStreamReader} does.
+ * <p/>
+ * {@link #forEachLine(LineHandler)} hands every line to a callback as a reusable
+ * {@link CharSequence}, so callers that do not keep the line do not allocate
+ * anything per line. Pure ASCII lines skip the charset decoder entirely.
+ * <p/>
+ * This class is not thread-safe.
+ *
+ * @author jony
+ * @see IOUtils#lineIterator(InputStream, String)
+ */
+@SuppressWarnings("unused")
+public class Utf8LineReader implements Closeable {
+    private static final ByteString LINE_TERMINATORS = ByteString.encodeUtf8("\r\n");
+
+    /**
+     * Receives the lines of {@link #forEachLine(LineHandler)}.
+     */
+    public interface LineHandler {
+        /**
+         * @param line the line, only valid until this method returns;
+         *             call <code>toString() to keep it
+         * @return true to continue with the next line, false to stop
+         */
+        boolean onLine(CharSequence line) throws IOException;
+    }
+
+    private final BufferedSource source;
+    private final LineView view = new LineView();
+    private byte[] bytes = new byte[128];
+    private CharsetDecoder decoder;
+    private int terminatorLength;
+
+    /**
+     * @param input the UTF-8 encoded stream to read from, not null
+     */
+    public Utf8LineReader(InputStream input) {
+        this(Okio.source(input));
+    }
+
+    /**
+     * @param source the UTF-8 encoded source to read from, not null
+     */
+    public Utf8LineReader(Source source) {
+        if (source == null) {
+            throw new IllegalArgumentException("Source must not be null");
+        }
+        this.source = source instanceof BufferedSource ? (BufferedSource) source : Okio.buffer(source);
+    }
+
+    /**
+     * Read the next line.
+     *
+     * @return the line without its terminator, or null at the end of the input
+     * @throws IOException if an I/O error occurs
+     */
+    public String readLine() throws IOException {
+        long length = nextLineLength();
+        if (length < 0) {
+            return null;
+        }
+        String line = source.readUtf8(length);
+        source.skip(terminatorLength);
+        return line;
+    }
+
+    /**
+     * Read the next line into the shared view returned by this method.
+     *
+     * @return a view of the line that is overwritten by the next call, or null
+     * at the end of the input
+     * @throws IOException if an I/O error occurs
+     */
+    public CharSequence readLineView() throws IOException {
+        long length = nextLineLength();
+        if (length < 0) {
+            return null;
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Line too long: " + length);
+        }
+        int n = (int) length;
+        if (bytes.length < n) {
+            bytes = new byte[Math.max(n, bytes.length * 2)];
+        }
+        // the whole line is already buffered, see nextLineLength()
+        for (int offset = 0; offset < n; ) {
+            offset += source.read(bytes, offset, n - offset);
+        }
+        source.skip(terminatorLength);
+        decode(n);
+        return view;
+    }
+
+    /**
+     * Hand every remaining line to <code>handler.
+     *
+     * @param handler the callback, not null
+     * @return the number of lines handed to the callback
+     * @throws IOException if an I/O error occurs or the callback fails
+     */
+    public long forEachLine(LineHandler handler) throws IOException {
+        long count = 0;
+        CharSequence line;
+        while ((line = readLineView()) != null) {
+            count++;
+            if (!handler.onLine(line)) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Close the underlying source.
+     */
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+
+    /**
+     * Locate the next line in the buffer of the source.
+     *
+     * @return the number of bytes of the line, or -1 at the end of the input
+     */
+    private long nextLineLength() throws IOException {
+        long index = source.indexOfElement(LINE_TERMINATORS);
+        if (index == -1) {
+            // indexOfElement buffered everything up to the end of the input
+            long size = source.buffer().size();
+            if (size == 0) {
+                return -1;
+            }
+            terminatorLength = 0;
+            return size;
+        }
+        terminatorLength = 1;
+        if (source.buffer().getByte(index) == '\r' && source.request(index + 2)
+                && source.buffer().getByte(index + 1) == '\n') {
+            terminatorLength = 2;
+        }
+        return index;
+    }
+
+    private void decode(int length) throws IOException {
+        char[] chars = view.ensureCapacity(length);
+        int i = 0;
+        while (i < length && bytes[i] >= 0) {
+            chars[i] = (char) bytes[i];
+            i++;
+        }
+        if (i == length) {
+            view.length = length;
+            return;
+        }
+
+        if (decoder == null) {
+            decoder = Charset.forName(UTF_8).newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+        // a UTF-8 sequence never decodes to more chars than it has bytes
+        CharBuffer out = CharBuffer.wrap(chars, i, length - i);
+        decoder.reset();
+        decoder.decode(ByteBuffer.wrap(bytes, i, length - i), out, true);
+        decoder.flush(out);
+        view.length = out.position();
+    }
+
+    /**
+     * The reusable view of the current line.
+     */
+    private static class LineView implements CharSequence {
+        char[] chars = new char[128];
+        int length;
+
+        char[] ensureCapacity(int capacity) {
+            if (chars.length < capacity) {
+                chars = new char[Math.max(capacity, chars.length * 2)];
+            }
+            return chars;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("index=" + index + " length=" + length);
+            }
+            return chars[index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length || start > end) {
+                throw new IndexOutOfBoundsException("start=" + start + " end=" + end + " length=" + length);
+            }
+            return new String(chars, start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars, 0, length);
+        }
+    }
+}
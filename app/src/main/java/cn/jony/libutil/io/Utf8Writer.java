@@ -0,0 +1,294 @@
+package cn.jony.libutil.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import okio.Buffer;
+
+/**
+ * {@link Writer} implementation that encodes to UTF-8 straight into a chain
+ * of byte chunks taken from {@link BufferPool}.
+ * <p/>
+ * This replaces the <code>StringBuilderWriter -&gt; toString() -&gt; getBytes("UTF-8")
+ * round trip: characters are encoded as they are written and the bytes are
+ * handed over as an okio {@link Buffer}, as <code>ByteBuffer[] for
+ * gathering writes, or through {@link #writeTo(OutputStream)}.
+ * <p/>
+ * A surrogate pair may be split across two writes. Unpaired surrogates are
+ * encoded as <code>'?', like {@link String#getBytes(String)} does; a high
+ * surrogate ending the input is only known to be unpaired, and encoded, on
+ * {@link #close()}.
+ * <p/>
+ * {@link #reset()} hands the chunks back to the pool, the writer can be
+ * reused afterwards. This class is not thread-safe.
+ *
+ * @author jony
+ * @see SegmentedStringWriter
+ */
+@SuppressWarnings("unused")
+public class Utf8Writer extends Writer {
+    private static final int CHUNK_SIZE = BufferPool.BUFFER_SIZE;
+    private static final byte REPLACEMENT = '?';
+
+    private final List<byte[]> chunks = new ArrayList<>();
+    private byte[] current;
+    private int position = CHUNK_SIZE;
+    private long size;
+    private char pendingHigh;
+
+    @Override
+    public void write(int c) {
+        encode((char) c);
+    }
+
+    @Override
+    public void write(char[] value, int offset, int length) {
+        if (value == null) {
+            return;
+        }
+        if (offset < 0 || length < 0 || offset + length > value.length) {
+            throw new IndexOutOfBoundsException("offset=" + offset + " length=" + length + " size=" + value.length);
+        }
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            // ASCII run, straight into the current chunk
+            if (pendingHigh == 0) {
+                if (position == CHUNK_SIZE) {
+                    nextChunk();
+                }
+                int limit = Math.min(end, i + CHUNK_SIZE - position);
+                int start = i;
+                char c;
+                while (i < limit && (c = value[i]) < 0x80) {
+                    current[position++] = (byte) c;
+                    i++;
+                }
+                size += i - start;
+                if (i == end) {
+                    break;
+                }
+            }
+            encode(value[i++]);
+        }
+    }
+
+    @Override
+    public void write(String value) {
+        if (value != null) {
+            write(value, 0, value.length());
+        }
+    }
+
+    @Override
+    public void write(String value, int offset, int length) {
+        if (value == null) {
+            return;
+        }
+        if (offset < 0 || length < 0 || offset + length > value.length()) {
+            throw new IndexOutOfBoundsException("offset=" + offset + " length=" + length + " size=" + value.length());
+        }
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            if (pendingHigh == 0) {
+                if (position == CHUNK_SIZE) {
+                    nextChunk();
+                }
+                int limit = Math.min(end, i + CHUNK_SIZE - position);
+                int start = i;
+                char c;
+                while (i < limit && (c = value.charAt(i)) < 0x80) {
+                    current[position++] = (byte) c;
+                    i++;
+                }
+                size += i - start;
+                if (i == end) {
+                    break;
+                }
+            }
+            encode(value.charAt(i++));
+        }
+    }
+
+    @Override
+    public Writer append(char value) {
+        encode(value);
+        return this;
+    }
+
+    @Override
+    public Writer append(CharSequence value) {
+        return append(value, 0, value == null ? 4 : value.length());
+    }
+
+    @Override
+    public Writer append(CharSequence value, int start, int end) {
+        if (value == null) {
+            value = "null";
+        }
+        if (value instanceof String) {
+            write((String) value, start, end - start);
+            return this;
+        }
+        for (int i = start; i < end; i++) {
+            encode(value.charAt(i));
+        }
+        return this;
+    }
+
+    /**
+     * Flushing this writer has no effect.
+     */
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * Encode a trailing unpaired high surrogate, if any. The writer can still
+     * be written to afterwards.
+     */
+    @Override
+    public void close() {
+        if (pendingHigh != 0) {
+            pendingHigh = 0;
+            put(REPLACEMENT);
+        }
+    }
+
+    /**
+     * @return the number of bytes encoded so far
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return a copy of the encoded bytes in a new okio buffer
+     */
+    public Buffer toBuffer() {
+        Buffer buffer = new Buffer();
+        for (int i = 0; i < chunks.size(); i++) {
+            buffer.write(chunks.get(i), 0, chunkLength(i));
+        }
+        return buffer;
+    }
+
+    /**
+     * Return the encoded bytes as buffers wrapping the chunks of this writer,
+     * for {@link java.nio.channels.GatheringByteChannel#write(ByteBuffer[])}.
+     * The buffers are only valid until the next write or {@link #reset()}.
+     *
+     * @return one buffer per chunk
+     */
+    public ByteBuffer[] toByteBuffers() {
+        ByteBuffer[] buffers = new ByteBuffer[chunks.size()];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = ByteBuffer.wrap(chunks.get(i), 0, chunkLength(i));
+        }
+        return buffers;
+    }
+
+    /**
+     * @return a copy of the encoded bytes
+     */
+    public byte[] toByteArray() {
+        if (size > IOUtils.MAX_ARRAY_SIZE) {
+            throw new IllegalStateException("Content too large for an array: " + size);
+        }
+        byte[] bytes = new byte[(int) size];
+        int offset = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            int n = chunkLength(i);
+            System.arraycopy(chunks.get(i), 0, bytes, offset, n);
+            offset += n;
+        }
+        return bytes;
+    }
+
+    /**
+     * Write the encoded bytes to <code>output, one chunk at a time.
+     *
+     * @param output the stream to write to, not closed
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeTo(OutputStream output) throws IOException {
+        for (int i = 0; i < chunks.size(); i++) {
+            output.write(chunks.get(i), 0, chunkLength(i));
+        }
+    }
+
+    /**
+     * Discard the content and return the chunks to {@link BufferPool}.
+     */
+    public void reset() {
+        for (byte[] chunk : chunks) {
+            BufferPool.recycle(chunk);
+        }
+        chunks.clear();
+        current = null;
+        position = CHUNK_SIZE;
+        size = 0;
+        pendingHigh = 0;
+    }
+
+    /**
+     * @return the encoded bytes decoded back to a <code>String
+     */
+    @Override
+    public String toString() {
+        return toBuffer().readUtf8();
+    }
+
+    private void encode(char c) {
+        if (pendingHigh != 0) {
+            char high = pendingHigh;
+            pendingHigh = 0;
+            if (Character.isLowSurrogate(c)) {
+                int codePoint = Character.toCodePoint(high, c);
+                put((byte) (0xf0 | (codePoint >> 18)));
+                put((byte) (0x80 | ((codePoint >> 12) & 0x3f)));
+                put((byte) (0x80 | ((codePoint >> 6) & 0x3f)));
+                put((byte) (0x80 | (codePoint & 0x3f)));
+                return;
+            }
+            put(REPLACEMENT);
+        }
+        if (c < 0x80) {
+            put((byte) c);
+        } else if (c < 0x800) {
+            put((byte) (0xc0 | (c >> 6)));
+            put((byte) (0x80 | (c & 0x3f)));
+        } else if (Character.isHighSurrogate(c)) {
+            pendingHigh = c;
+        } else if (Character.isLowSurrogate(c)) {
+            put(REPLACEMENT);
+        } else {
+            put((byte) (0xe0 | (c >> 12)));
+            put((byte) (0x80 | ((c >> 6) & 0x3f)));
+            put((byte) (0x80 | (c & 0x3f)));
+        }
+    }
+
+    private void put(byte b) {
+        if (position == CHUNK_SIZE) {
+            nextChunk();
+        }
+        current[position++] = b;
+        size++;
+    }
+
+    private void nextChunk() {
+        current = BufferPool.takeBytes();
+        chunks.add(current);
+        position = 0;
+    }
+
+    private int chunkLength(int index) {
+        return index == chunks.size() - 1 ? position : CHUNK_SIZE;
+    }
+}
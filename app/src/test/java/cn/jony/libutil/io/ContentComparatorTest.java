@@ -0,0 +1,118 @@
+package cn.jony.libutil.io;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class ContentComparatorTest {
+    private static final int REGION_SIZE = 64 * 1024;
+
+    private ExecutorService executor;
+    private File file1;
+    private File file2;
+    private byte[] data;
+
+    @Before
+    public void setUp() throws IOException {
+        executor = Executors.newFixedThreadPool(4);
+        data = new byte[64 * REGION_SIZE + 7];
+        new Random(0).nextBytes(data);
+        file1 = File.createTempFile("compare", ".1");
+        file2 = File.createTempFile("compare", ".2");
+        write(file1, data);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        //noinspection ResultOfMethodCallIgnored
+        file1.delete();
+        //noinspection ResultOfMethodCallIgnored
+        file2.delete();
+    }
+
+    @Test
+    public void equalFilesInParallel() throws IOException {
+        write(file2, data);
+
+        assertEquals(-1, ContentComparator.mismatch(file1, file2, executor, REGION_SIZE));
+    }
+
+    @Test
+    public void firstDifferenceInParallel() throws IOException {
+        byte[] other = data.clone();
+        other[3 * REGION_SIZE + 5] ^= 1;
+        other[40 * REGION_SIZE] ^= 1;
+        write(file2, other);
+
+        // the later regions are abandoned while the channels are still open
+        for (int i = 0; i < 20; i++) {
+            assertEquals(3 * REGION_SIZE + 5, ContentComparator.mismatch(file1, file2, executor, REGION_SIZE));
+        }
+    }
+
+    @Test
+    public void shorterFileInParallel() throws IOException {
+        byte[] prefix = new byte[data.length - 100];
+        System.arraycopy(data, 0, prefix, 0, prefix.length);
+        write(file2, prefix);
+
+        assertEquals(prefix.length, ContentComparator.mismatch(file1, file2, executor, REGION_SIZE));
+    }
+
+    @Test
+    public void contentEqualsFileReportingSizeZero() throws IOException {
+        // procfs files report a size of 0 but have content
+        File proc = new File("/proc/version");
+        assumeTrue(proc.isFile() && proc.length() == 0);
+        write(file2, read(proc));
+
+        InputStream input1 = new FileInputStream(proc);
+        InputStream input2 = new FileInputStream(file2);
+        try {
+            assertTrue(IOUtils.contentEquals(input1, input2));
+        } finally {
+            IOUtils.closeQuietly(input1);
+            IOUtils.closeQuietly(input2);
+        }
+    }
+
+    private static void write(File file, byte[] content) throws IOException {
+        OutputStream output = new FileOutputStream(file);
+        try {
+            output.write(content);
+        } finally {
+            IOUtils.closeQuietly(output);
+        }
+    }
+
+    private static byte[] read(File file) throws IOException {
+        InputStream input = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = input.read(buffer)) != -1) {
+                output.write(buffer, 0, n);
+            }
+            return output.toByteArray();
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package cn.jony.libutil.io;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+import okio.BufferedSource;
+import okio.Okio;
+import okio.Sink;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Compares {@link IOUtils#copyLarge(InputStream, OutputStream)}, which copies
+ * files through <code>FileChannel.transferTo, with the Okio loop it replaced.
+ * <p/>
+ * Skipped unless the <code>libutil.benchmark system property is true, run it with
+ * <code>./gradlew test -Pbenchmark. The throughput of both is printed to stdout.
+ */
+public class IOUtilsCopyBenchmark {
+    private static final int FILE_SIZE = 256 * 1024 * 1024;
+    private static final int WARMUP_RUNS = 2;
+    private static final int MEASURED_RUNS = 5;
+
+    private File src;
+    private File dst;
+
+    @Before
+    public void setUp() throws IOException {
+        assumeTrue(Boolean.getBoolean("libutil.benchmark"));
+        src = File.createTempFile("benchmark", ".src");
+        dst = File.createTempFile("benchmark", ".dst");
+        byte[] block = new byte[1024 * 1024];
+        new Random(0).nextBytes(block);
+        OutputStream output = new FileOutputStream(src);
+        try {
+            for (int written = 0; written < FILE_SIZE; written += block.length) {
+                output.write(block);
+            }
+        } finally {
+            IOUtils.closeQuietly(output);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        if (src != null) {
+            //noinspection ResultOfMethodCallIgnored
+            src.delete();
+        }
+        if (dst != null) {
+            //noinspection ResultOfMethodCallIgnored
+            dst.delete();
+        }
+    }
+
+    @Test
+    public void transferToVersusOkio() throws IOException {
+        Copier transferTo = new Copier() {
+            @Override
+            public long copy(InputStream input, OutputStream output) throws IOException {
+                return IOUtils.copyLarge(input, output);
+            }
+        };
+        Copier okio = new Copier() {
+            @Override
+            public long copy(InputStream input, OutputStream output) throws IOException {
+                BufferedSource source = Okio.buffer(Okio.source(input));
+                Sink sink = Okio.sink(output);
+                return source.readAll(sink);
+            }
+        };
+        report("transferTo", measure(transferTo));
+        report("okio", measure(okio));
+    }
+
+    private interface Copier {
+        long copy(InputStream input, OutputStream output) throws IOException;
+    }
+
+    /**
+     * @return the best time of the measured runs, in nanoseconds
+     */
+    private long measure(Copier copier) throws IOException {
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < WARMUP_RUNS + MEASURED_RUNS; run++) {
+            InputStream input = new FileInputStream(src);
+            OutputStream output = new FileOutputStream(dst);
+            long start = System.nanoTime();
+            try {
+                assertEquals(FILE_SIZE, copier.copy(input, output));
+            } finally {
+                IOUtils.closeQuietly(input);
+                IOUtils.closeQuietly(output);
+            }
+            long elapsed = System.nanoTime() - start;
+            if (run >= WARMUP_RUNS) {
+                best = Math.min(best, elapsed);
+            }
+        }
+        return best;
+    }
+
+    private static void report(String name, long nanos) {
+        double seconds = nanos / 1e9;
+        System.out.printf("%-10s %8.1f ms %8.1f MB/s%n", name, seconds * 1000,
+                FILE_SIZE / (1024.0 * 1024.0) / seconds);
+    }
+}
@@ -0,0 +1,190 @@
+package cn.jony.libutil.io;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Tests the channel path of {@link IOUtils#copyLarge(InputStream, OutputStream)}
+ * and its fallbacks for inputs whose size can not be trusted.
+ */
+public class IOUtilsCopyTest {
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("copy", "");
+        assertTrue(dir.delete() && dir.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        dir.delete();
+    }
+
+    @Test
+    public void copiesRegularFile() throws IOException {
+        // larger than one transferTo chunk
+        byte[] data = randomBytes(9 * 1024 * 1024 + 17);
+        File src = write("src", data);
+        File dst = new File(dir, "dst");
+
+        assertEquals(data.length, copy(src, dst));
+        assertArrayEquals(data, read(dst));
+    }
+
+    @Test
+    public void copiesFromCurrentPosition() throws IOException {
+        byte[] data = randomBytes(100000);
+        File src = write("src", data);
+        File dst = new File(dir, "dst");
+
+        FileInputStream input = new FileInputStream(src);
+        FileOutputStream output = new FileOutputStream(dst);
+        try {
+            IOUtils.skip(input, 1000);
+            assertEquals(data.length - 1000, IOUtils.copyLarge(input, output));
+            assertEquals(-1, input.read());
+        } finally {
+            IOUtils.closeQuietly(input);
+            IOUtils.closeQuietly(output);
+        }
+        byte[] expected = new byte[data.length - 1000];
+        System.arraycopy(data, 1000, expected, 0, expected.length);
+        assertArrayEquals(expected, read(dst));
+    }
+
+    @Test
+    public void copiesEmptyFile() throws IOException {
+        File src = write("src", new byte[0]);
+        File dst = new File(dir, "dst");
+
+        assertEquals(0, copy(src, dst));
+        assertEquals(0, dst.length());
+    }
+
+    @Test
+    public void copiesFileReportingSizeZero() throws IOException {
+        // procfs files report a size of 0 but have content
+        File src = new File("/proc/version");
+        assumeTrue(src.isFile() && src.length() == 0);
+        byte[] expected = read(src);
+        assumeTrue(expected.length > 0);
+        File dst = new File(dir, "dst");
+
+        assertEquals(expected.length, copy(src, dst));
+        assertArrayEquals(expected, read(dst));
+    }
+
+    @Test
+    public void copiesFromFifo() throws Exception {
+        final File fifo = new File(dir, "fifo");
+        assumeTrue(mkfifo(fifo));
+        final byte[] data = randomBytes(3 * 1024 * 1024 + 5);
+        File dst = new File(dir, "dst");
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // opening a FIFO blocks until the other end is opened
+            Future<Void> writer = executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    OutputStream output = new FileOutputStream(fifo);
+                    try {
+                        output.write(data);
+                    } finally {
+                        IOUtils.closeQuietly(output);
+                    }
+                    return null;
+                }
+            });
+            assertEquals(data.length, copy(fifo, dst));
+            writer.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertArrayEquals(data, read(dst));
+    }
+
+    private static long copy(File src, File dst) throws IOException {
+        InputStream input = new FileInputStream(src);
+        OutputStream output = null;
+        try {
+            output = new FileOutputStream(dst);
+            return IOUtils.copyLarge(input, output);
+        } finally {
+            IOUtils.closeQuietly(input);
+            IOUtils.closeQuietly(output);
+        }
+    }
+
+    private File write(String name, byte[] data) throws IOException {
+        File file = new File(dir, name);
+        OutputStream output = new FileOutputStream(file);
+        try {
+            output.write(data);
+        } finally {
+            IOUtils.closeQuietly(output);
+        }
+        return file;
+    }
+
+    private static byte[] read(File file) throws IOException {
+        // a plain read loop, independent of the code under test
+        InputStream input = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = input.read(buffer)) != -1) {
+                output.write(buffer, 0, n);
+            }
+            return output.toByteArray();
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    private static boolean mkfifo(File file) throws InterruptedException {
+        try {
+            Process process = new ProcessBuilder("mkfifo", file.getPath()).start();
+            return process.waitFor() == 0 && file.exists();
+        } catch (IOException e) {
+            // no mkfifo on this platform
+            return false;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package cn.jony.libutil.io;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class LineIndexTest {
+    /**
+     * The offset of the line count in a sidecar.
+     */
+    private static final int LINE_COUNT_OFFSET = 4 + 4 + 8 + 8 + 4;
+
+    private File file;
+    private File sidecar;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("lines", ".txt");
+        sidecar = LineIndex.sidecarOf(file);
+        OutputStream output = new FileOutputStream(file);
+        try {
+            for (int i = 0; i < 1000; i++) {
+                output.write(("line " + i + "\n").getBytes("UTF-8"));
+            }
+        } finally {
+            IOUtils.closeQuietly(output);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+        //noinspection ResultOfMethodCallIgnored
+        sidecar.delete();
+    }
+
+    @Test
+    public void loadsSavedIndex() throws IOException {
+        LineIndex index = LineIndex.build(file, 16);
+        index.save(sidecar);
+
+        LineIndex loaded = LineIndex.load(file);
+        assertNotNull(loaded);
+        assertEquals(index.getLineCount(), loaded.getLineCount());
+    }
+
+    @Test
+    public void rejectsSampleCountBeyondFileLength() throws IOException {
+        LineIndex.build(file, 16).save(sidecar);
+        // a consistent header claiming far more samples than the sidecar holds
+        RandomAccessFile raf = new RandomAccessFile(sidecar, "rw");
+        try {
+            raf.seek(LINE_COUNT_OFFSET);
+            raf.writeLong(16L * Integer.MAX_VALUE);
+            raf.writeInt(Integer.MAX_VALUE);
+        } finally {
+            IOUtils.closeQuietly(raf);
+        }
+
+        assertNull(LineIndex.load(file));
+    }
+}
@@ -0,0 +1,91 @@
+package cn.jony.libutil.io;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class MerkleTreeTest {
+    private static final int CHUNK_SIZE = 64 * 1024;
+    /**
+     * The offset of the file size in a sidecar written for SHA-256.
+     */
+    private static final int FILE_SIZE_OFFSET = 4 + 4 + 1 + MultiDigest.SHA_256.length() + 4;
+
+    private File file;
+    private File sidecar;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("merkle", ".bin");
+        sidecar = MerkleTree.sidecarOf(file);
+        byte[] data = new byte[10 * CHUNK_SIZE + 123];
+        new Random(0).nextBytes(data);
+        OutputStream output = new FileOutputStream(file);
+        try {
+            output.write(data);
+        } finally {
+            IOUtils.closeQuietly(output);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+        //noinspection ResultOfMethodCallIgnored
+        sidecar.delete();
+    }
+
+    @Test
+    public void loadsSavedTree() throws IOException {
+        MerkleTree tree = MerkleTree.build(file, MultiDigest.SHA_256, CHUNK_SIZE, null, 1);
+        tree.save(sidecar);
+
+        MerkleTree loaded = MerkleTree.load(sidecar);
+        assertNotNull(loaded);
+        assertEquals(tree.getRootHex(), loaded.getRootHex());
+    }
+
+    @Test
+    public void rejectsCountBeyondFileLength() throws IOException {
+        MerkleTree.build(file, MultiDigest.SHA_256, CHUNK_SIZE, null, 1).save(sidecar);
+        // a consistent header claiming far more chunks than the sidecar holds
+        long claimedSize = (long) Integer.MAX_VALUE * CHUNK_SIZE;
+        RandomAccessFile raf = new RandomAccessFile(sidecar, "rw");
+        try {
+            raf.seek(FILE_SIZE_OFFSET);
+            raf.writeLong(claimedSize);
+            raf.seek(FILE_SIZE_OFFSET + 8 + 8 + 4);
+            raf.writeInt(Integer.MAX_VALUE);
+        } finally {
+            IOUtils.closeQuietly(raf);
+        }
+
+        assertNull(MerkleTree.load(sidecar));
+    }
+
+    @Test
+    public void rejectsHashLengthOfAnotherAlgorithm() throws IOException {
+        MerkleTree.build(file, MultiDigest.SHA_256, CHUNK_SIZE, null, 1).save(sidecar);
+        RandomAccessFile raf = new RandomAccessFile(sidecar, "rw");
+        try {
+            raf.seek(FILE_SIZE_OFFSET + 8 + 8);
+            raf.writeInt(16);
+        } finally {
+            IOUtils.closeQuietly(raf);
+        }
+
+        assertNull(MerkleTree.load(sidecar));
+    }
+}
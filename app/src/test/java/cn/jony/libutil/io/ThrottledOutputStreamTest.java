@@ -0,0 +1,77 @@
+package cn.jony.libutil.io;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import okio.Buffer;
+import okio.Okio;
+import okio.Sink;
+
+import static org.junit.Assert.assertEquals;
+
+public class ThrottledOutputStreamTest {
+    private static final int RATE = 256 * 1024;
+
+    @Test
+    public void splitsLargeWritesIntoBursts() throws IOException {
+        RecordingOutputStream recorder = new RecordingOutputStream();
+        OutputStream output = new ThrottledOutputStream(recorder, new RateLimiter(RATE));
+
+        long start = System.nanoTime();
+        output.write(new byte[2 * RATE + RATE / 2]);
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        assertEquals(3, recorder.writes.size());
+        assertEquals(RATE, (int) recorder.writes.get(0));
+        assertEquals(RATE, (int) recorder.writes.get(1));
+        assertEquals(RATE / 2, (int) recorder.writes.get(2));
+        // the first burst is free, the rest takes 1.5 seconds
+        assertEquals(1500, elapsedMillis, 300);
+    }
+
+    @Test
+    public void sinkSplitsLargeWritesIntoBursts() throws IOException {
+        RecordingOutputStream recorder = new RecordingOutputStream();
+        Sink sink = new ThrottledSink(Okio.sink(recorder), new RateLimiter(RATE));
+
+        Buffer buffer = new Buffer().write(new byte[RATE + 10]);
+        sink.write(buffer, buffer.size());
+        sink.flush();
+
+        int total = 0;
+        for (int n : recorder.writes) {
+            total += n;
+        }
+        assertEquals(RATE + 10, total);
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void unlimitedWritesPassInOnePiece() throws IOException {
+        RecordingOutputStream recorder = new RecordingOutputStream();
+        OutputStream output = new ThrottledOutputStream(recorder, new RateLimiter(0));
+
+        output.write(new byte[4 * RATE]);
+
+        assertEquals(1, recorder.writes.size());
+        assertEquals(4 * RATE, (int) recorder.writes.get(0));
+    }
+
+    private static final class RecordingOutputStream extends OutputStream {
+        final List<Integer> writes = new ArrayList<>();
+
+        @Override
+        public void write(int b) {
+            writes.add(1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            writes.add(len);
+        }
+    }
+}